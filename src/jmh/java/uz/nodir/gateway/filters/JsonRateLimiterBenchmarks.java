@@ -0,0 +1,79 @@
+package uz.nodir.gateway.filters;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:7:55 PM
+ * <p>
+ * Key resolution and the rejection response of the limiter filter. {@code newExchange} is the
+ * baseline for {@code writeRejected}, which needs a fresh exchange per call.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonRateLimiterBenchmarks {
+
+    private JsonRateLimiterGatewayFilterFactory factory;
+    private JsonRateLimiterGatewayFilterFactory.Responses responses;
+    private RateLimitDecision rejected;
+    private MockServerWebExchange byHeader;
+    private MockServerWebExchange byForwardedFor;
+
+    @Setup
+    public void setup() {
+        factory = new JsonRateLimiterGatewayFilterFactory(null, null, null);
+
+        JsonRateLimitProperty property = new JsonRateLimitProperty();
+        property.setLimit(3);
+        property.setStatusCode(429);
+        property.setFailedCode("RATE_LIMITED");
+        property.setFailedMessage("Too many requests");
+        property.setMissingIntegratorStatus(406);
+        responses = new JsonRateLimiterGatewayFilterFactory.Responses(property);
+        rejected = new RateLimitDecision(false, 0, 42);
+        byHeader = MockServerWebExchange.from(MockServerHttpRequest
+                .get("/internal/api/bin")
+                .header("X-Real-IP", " 203.0.113.17 ")
+                .build());
+        byForwardedFor = MockServerWebExchange.from(MockServerHttpRequest
+                .get("/internal/api/bin")
+                .header("X-Forwarded-For", "198.51.100.4, 10.0.0.1")
+                .build());
+    }
+
+    @Benchmark
+    public String resolveKeyByHeader() {
+        return factory.resolveKey(byHeader).block();
+    }
+
+    @Benchmark
+    public String resolveKeyByForwardedFor() {
+        return factory.resolveKey(byForwardedFor).block();
+    }
+
+    @Benchmark
+    public MockServerWebExchange newExchange() {
+        return newRejectedExchange();
+    }
+
+    @Benchmark
+    public MockServerWebExchange writeRejected() {
+        MockServerWebExchange exchange = newRejectedExchange();
+        responses.writeRejected(exchange, "203.0.113.17", rejected).block();
+        return exchange;
+    }
+
+    private static MockServerWebExchange newRejectedExchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/internal/api/bin").build());
+    }
+}
@@ -0,0 +1,147 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:7:40 PM
+ * <p>
+ * Cache key building, record encoding/decoding and body aggregation. None of these touch Redis.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResponseCacheBenchmarks {
+
+    private static final int MAX_BYTES = 262_144;
+
+    @State(Scope.Thread)
+    public static class KeyState {
+        CacheKeyBuilder keys;
+        MockServerWebExchange exchange;
+
+        @Setup
+        public void setup() {
+            ResponseCacheProperty cfg = new ResponseCacheProperty();
+            cfg.setRouteId("bench");
+            cfg.setKeyByIntegrator(true);
+            cfg.setKeyHeaders(List.of(HttpHeaders.ACCEPT_LANGUAGE));
+            keys = new CacheKeyBuilder(cfg);
+            exchange = MockServerWebExchange.from(MockServerHttpRequest
+                    .get("/internal/api/bin")
+                    .queryParam("inn", "301234567")
+                    .queryParam("page", "2")
+                    .queryParam("size", "50")
+                    .header("X-Integrator-Id", " Integrator-42 ")
+                    .header(HttpHeaders.ACCEPT_LANGUAGE, "uz")
+                    .build());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RecordState {
+        @Param({"1024", "65536", "262144"})
+        public int bodySize;
+
+        HttpHeaders headers;
+        byte[] body;
+        byte[] record;
+
+        @Setup
+        public void setup() {
+            headers = headers();
+            body = randomBytes(bodySize);
+            record = CacheEntryCodec.encode(200, headers, body, 0L, Long.MAX_VALUE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ChunkedBodyState {
+        @Param({"1024", "65536", "262144"})
+        public int bodySize;
+
+        @Param({"1", "8", "64"})
+        public int chunkCount;
+
+        HttpHeaders headers;
+        byte[][] chunks;
+
+        @Setup
+        public void setup() {
+            headers = headers();
+            byte[] body = randomBytes(bodySize);
+            int chunkSize = (bodySize + chunkCount - 1) / chunkCount;
+            List<byte[]> parts = new ArrayList<>();
+            for (int from = 0; from < bodySize; from += chunkSize) {
+                parts.add(Arrays.copyOfRange(body, from, Math.min(bodySize, from + chunkSize)));
+            }
+            chunks = parts.toArray(byte[][]::new);
+        }
+
+        Flux<DataBuffer> body() {
+            List<DataBuffer> buffers = new ArrayList<>(chunks.length);
+            for (byte[] chunk : chunks) buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+            return Flux.fromIterable(buffers);
+        }
+    }
+
+    @Benchmark
+    public String buildKey(KeyState state) {
+        return state.keys.build(state.exchange);
+    }
+
+    @Benchmark
+    public byte[] encode(RecordState state) {
+        return CacheEntryCodec.encode(200, state.headers, state.body, 0L, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public CachedResponse decode(RecordState state) throws Exception {
+        return CacheEntryCodec.decode(state.record);
+    }
+
+    @Benchmark
+    public int aggregateAndEncode(ChunkedBodyState state) {
+        int[] size = new int[1];
+        ResponseCacheGatewayFilterFactory.DataBufferUtilsEx.aggregate(state.body(), MAX_BYTES,
+                        agg -> {
+                            size[0] = CacheEntryCodec.encode(200, state.headers, agg.chunks, agg.size, 0L, Long.MAX_VALUE).length;
+                            return Mono.empty();
+                        },
+                        Flux::then)
+                .block();
+        return size[0];
+    }
+
+    private static HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.add("Date", "Fri, 16 Oct 2026 10:00:00 GMT");
+        headers.add("X-Request-Id", "6f1c2a4e-1b7d-4c35-9d7b-0d5d2f3c8a11");
+        return headers;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,82 @@
+package uz.nodir.ratelimitapigateway.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:5:05 AM
+ * <p>
+ * Lock-free log-linear histogram of latencies in microseconds. Values below 128 get a bucket
+ * each; above that, every power of two is split into 64 buckets, so a reported percentile is
+ * within 1% of the exact one, up to about 25 days. Recording never allocates, so it
+ * does not add to the allocation rate being measured.
+ */
+
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    double mean() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * The latency {@code quantile} (0..1) of the recorded values fall at or below, as the middle
+     * of its bucket.
+     */
+    long percentile(double quantile) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(max.get(), lowerBound(i) + width(i) / 2);
+        }
+        return max.get();
+    }
+
+    static int index(long value) {
+        if (value < (1L << (SUB_BITS + 1))) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    static long lowerBound(int index) {
+        if (index < (1 << (SUB_BITS + 1))) return index;
+        int shift = (index >>> SUB_BITS) - 1;
+        long mantissa = (1L << SUB_BITS) + (index & ((1 << SUB_BITS) - 1));
+        return mantissa << shift;
+    }
+
+    private static long width(int index) {
+        return index < (1 << (SUB_BITS + 1)) ? 1 : 1L << ((index >>> SUB_BITS) - 1);
+    }
+}
@@ -0,0 +1,142 @@
+package uz.nodir.ratelimitapigateway.loadtest;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:5:40 AM
+ * <p>
+ * Sends a {@link Scenario}'s traffic to the gateway's smartBill route. Without {@code rps} it
+ * is a closed loop: {@code concurrency} clients, each sending its next request as soon as the
+ * last one is answered, which measures the most the gateway can serve. With {@code rps} it sends
+ * at that fixed rate whatever the gateway does. Latency is then counted from when a request was
+ * due, so a stalled gateway shows up in the tail instead of just slowing the load down.
+ */
+
+final class LoadGenerator {
+
+    static final String INTEGRATOR_HEADER = "X-Real-IP";
+    // the response cache keys by this one
+    static final String CACHE_INTEGRATOR_HEADER = "X-Integrator-Id";
+    static final String BLOCKED_PREFIX = "blocked-";
+    private static final String PATH = "/internal/api/bin?inn=";
+
+    private final HttpClient client;
+    private final LoadTest.Options options;
+    private final Scheduler timer;
+    private final AtomicLong missSequence = new AtomicLong();
+
+    LoadGenerator(int gatewayPort, LoadTest.Options options, LoopResources loops, Scheduler timer) {
+        ConnectionProvider pool = ConnectionProvider.builder("loadtest")
+                .maxConnections(Math.max(options.concurrency(), options.maxInFlight()))
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = HttpClient.create(pool)
+                .runOn(loops)
+                .baseUrl("http://127.0.0.1:" + gatewayPort)
+                .responseTimeout(Duration.ofSeconds(10));
+        this.options = options;
+        this.timer = timer;
+    }
+
+    /**
+     * Sends traffic until {@code running} turns false, then completes once the requests in
+     * flight are answered.
+     */
+    Mono<Void> run(Scenario scenario, Recording recording, BooleanSupplier running) {
+        if (options.rps() <= 0) {
+            return Flux.range(0, options.concurrency())
+                    .flatMap(worker -> Mono.defer(() -> send(scenario, recording, System.nanoTime()))
+                            .repeat(running), options.concurrency())
+                    .then();
+        }
+
+        long rps = options.rps();
+        long base = System.nanoTime();
+        AtomicLong scheduled = new AtomicLong();
+        return Flux.interval(Duration.ofMillis(1), timer)
+                .onBackpressureBuffer()
+                .takeWhile(tick -> running.getAsBoolean())
+                .concatMap(tick -> {
+                    long due = (System.nanoTime() - base) * rps / 1_000_000_000L;
+                    long from = scheduled.getAndSet(due);
+                    return Flux.range(0, (int) (due - from))
+                            .map(i -> base + (from + i) * 1_000_000_000L / rps);
+                })
+                .flatMap(intended -> send(scenario, recording, intended), options.maxInFlight())
+                .then();
+    }
+
+    private Mono<Void> send(Scenario scenario, Recording recording, long start) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String integrator = random.nextDouble() < scenario.overLimitShare
+                ? BLOCKED_PREFIX + random.nextInt(options.blockedIntegrators())
+                : "integrator-" + random.nextInt(options.integrators());
+        // hot keys are per integrator too, since the cache is keyed by integrator
+        String inn = random.nextDouble() < scenario.hitRatio
+                ? "hot-" + random.nextInt(options.hotKeys())
+                : "miss-" + missSequence.incrementAndGet();
+
+        return client
+                .headers(headers -> headers
+                        .set(INTEGRATOR_HEADER, integrator)
+                        .set(CACHE_INTEGRATOR_HEADER, integrator))
+                .get()
+                .uri(PATH + inn)
+                .responseSingle((response, body) -> body.asByteArray()
+                        .then(Mono.fromRunnable(() -> recording.response(start, response.status().code(),
+                                response.responseHeaders().get("X-Cache")))))
+                .onErrorResume(err -> {
+                    recording.error(start);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * What the requests started inside the measured window got back; earlier and later ones
+     * are warm-up and drain.
+     */
+    static final class Recording {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> cache = new ConcurrentHashMap<>();
+        final LongAdder errors = new LongAdder();
+        private volatile long from = Long.MAX_VALUE;
+        private volatile long to = Long.MAX_VALUE;
+
+        void open(long nanos) {
+            from = nanos;
+        }
+
+        void close(long nanos) {
+            to = nanos;
+        }
+
+        void response(long start, int status, String cacheOutcome) {
+            if (start < from || start >= to) return;
+            latency.record((System.nanoTime() - start) / 1_000);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            cache.computeIfAbsent(cacheOutcome != null ? cacheOutcome : "NONE", s -> new LongAdder()).increment();
+        }
+
+        void error(long start) {
+            if (start >= from && start < to) errors.increment();
+        }
+    }
+}
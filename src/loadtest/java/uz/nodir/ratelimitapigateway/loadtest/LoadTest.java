@@ -0,0 +1,413 @@
+package uz.nodir.ratelimitapigateway.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.resources.LoopResources;
+import uz.nodir.ratelimitapigateway.RateLimitApiGatewayApplication;
+import uz.nodir.ratelimitapigateway.service.DynamicQuotaTable;
+import uz.nodir.ratelimitapigateway.service.RedisGuard;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:6:00 AM
+ * <p>
+ * End-to-end load test of the gateway on one machine. It starts a {@link StubUpstream} in place
+ * of the smartBill service, a {@code redis:7-alpine} container through Testcontainers (or uses
+ * the Redis given by {@code redis=host:port}) and the gateway itself with the {@code loadtest}
+ * profile, so the limiter and cache run their real Lua scripts. It then runs each
+ * {@link Scenario} and prints one JSON report, also written to {@code report}:
+ * <pre>
+ * mvn -Ploadtest test-compile exec:exec
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="scenarios=mixed,hits rps=5000 duration=60"
+ * </pre>
+ * All parts share one JVM. The allocation rate is reported both for the whole process and for
+ * the gateway alone, which is the process minus the harness's own threads (named
+ * {@code loadtest-*}). Redis ops are the commands the server processed, read from
+ * {@code INFO stats}, so against a shared Redis they include other clients' commands.
+ * <p>
+ * A run that measured the gateway's Redis fallbacks instead of its normal path fails: a scenario
+ * throws when a Redis call failed or when a circuit breaker took a call to its fallback, and the
+ * process exits with status 1.
+ */
+
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        LoopResources loops = LoopResources.create("loadtest", Math.max(2, Runtime.getRuntime().availableProcessors() / 2), true);
+        Scheduler timer = Schedulers.newParallel("loadtest-timer", 2, true);
+        int status = 0;
+
+        try (Redis redis = Redis.start(options.redis());
+             StubUpstream upstream = new StubUpstream(options.payloadBytes(),
+                     Duration.ofMillis(options.upstreamLatencyMillis()), Duration.ofMillis(options.upstreamJitterMillis()),
+                     loops, timer);
+             ConfigurableApplicationContext gateway = startGateway(redis, upstream)) {
+
+            blockIntegrators(gateway, options);
+            int port = gateway.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            LoadGenerator generator = new LoadGenerator(port, options, loops, timer);
+            Fallbacks fallbacks = new Fallbacks(gateway);
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Scenario scenario : options.scenarios()) {
+                System.err.printf("loadtest: %s, %ds warm-up + %ds%n", scenario, options.warmupSeconds(), options.durationSeconds());
+                results.add(run(scenario, generator, options, redis, upstream, fallbacks));
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("options", options);
+            report.put("redis", redis.description());
+            report.put("scenarios", results);
+            ObjectMapper json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            System.out.println(json.writeValueAsString(report));
+            if (!options.report().isBlank()) {
+                File file = new File(options.report());
+                if (file.getParentFile() != null) file.getParentFile().mkdirs();
+                json.writeValue(file, report);
+                System.err.println("loadtest: report written to " + file.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            System.err.println("loadtest: failed");
+            e.printStackTrace();
+            status = 1;
+        } finally {
+            timer.dispose();
+            loops.disposeLater().block(Duration.ofSeconds(5));
+        }
+        // the gateway leaves non-daemon threads behind
+        System.exit(status);
+    }
+
+    private static ConfigurableApplicationContext startGateway(Redis redis, StubUpstream upstream) {
+        SpringApplication app = new SpringApplication(RateLimitApiGatewayApplication.class);
+        app.setAdditionalProfiles("loadtest");
+        return app.run(
+                "--server.port=0",
+                "--spring.data.redis.host=" + redis.host,
+                "--spring.data.redis.port=" + redis.port,
+                "--loadtest.upstream=http://127.0.0.1:" + upstream.port());
+    }
+
+    /**
+     * Gives the integrators of over-limit traffic a quota of one request an hour, through the
+     * same quota table an operator would use.
+     */
+    private static void blockIntegrators(ConfigurableApplicationContext gateway, Options options) throws InterruptedException {
+        DynamicQuotaTable quotas = gateway.getBean(DynamicQuotaTable.class);
+        for (int i = 0; i < options.blockedIntegrators(); i++) {
+            quotas.put(LoadGenerator.BLOCKED_PREFIX + i, 1, 3600, null).block(Duration.ofSeconds(5));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (quotas.snapshot().size() < options.blockedIntegrators() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static Map<String, Object> run(Scenario scenario, LoadGenerator generator, Options options,
+                                           Redis redis, StubUpstream upstream, Fallbacks fallbacks) throws Exception {
+        Map<String, Long> before = fallbacks.counts();
+        LoadGenerator.Recording recording = new LoadGenerator.Recording();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<Void> load = generator.run(scenario, recording, running::get).toFuture();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.warmupSeconds()));
+        Sample start = Sample.take(redis, upstream);
+        recording.open(start.nanos);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.durationSeconds()));
+        Sample end = Sample.take(redis, upstream);
+        recording.close(end.nanos);
+        running.set(false);
+        load.get(30, TimeUnit.SECONDS);
+
+        // counted over the warm-up too: a fallback there means the gateway ran degraded
+        Map<String, Long> moved = Fallbacks.since(before, fallbacks.counts());
+        if (!moved.isEmpty()) {
+            throw new IllegalStateException("Scenario " + scenario + " ran on the Redis fallbacks " + moved);
+        }
+        return report(scenario, recording, start, end);
+    }
+
+    private static Map<String, Object> report(Scenario scenario, LoadGenerator.Recording recording,
+                                              Sample start, Sample end) {
+        double seconds = (end.nanos - start.nanos) / 1e9;
+        LatencyHistogram latency = recording.latency;
+        long responses = latency.count();
+        double perRequest = Math.max(1, responses);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", scenario.name().toLowerCase(Locale.ROOT));
+        result.put("seconds", round(seconds));
+        result.put("responses", responses);
+        result.put("errors", recording.errors.sum());
+        result.put("rps", round(responses / seconds));
+
+        Map<String, Long> statuses = new TreeMap<>();
+        recording.statuses.forEach((status, count) -> statuses.put(status.toString(), count.sum()));
+        result.put("status", statuses);
+        Map<String, Long> cache = new TreeMap<>();
+        recording.cache.forEach((outcome, count) -> cache.put(outcome, count.sum()));
+        result.put("cache", cache);
+
+        Map<String, Object> micros = new LinkedHashMap<>();
+        micros.put("p50", latency.percentile(0.50));
+        micros.put("p90", latency.percentile(0.90));
+        micros.put("p99", latency.percentile(0.99));
+        micros.put("p999", latency.percentile(0.999));
+        micros.put("max", latency.max());
+        micros.put("mean", round(latency.mean()));
+        result.put("latencyMicros", micros);
+
+        long allocated = end.allocatedBytes - start.allocatedBytes;
+        long gatewayAllocated = allocated - (end.harnessAllocatedBytes - start.harnessAllocatedBytes);
+        Map<String, Object> allocation = new LinkedHashMap<>();
+        allocation.put("processBytesPerSecond", Math.round(allocated / seconds));
+        allocation.put("gatewayBytesPerSecond", Math.round(gatewayAllocated / seconds));
+        allocation.put("gatewayBytesPerRequest", Math.round(gatewayAllocated / perRequest));
+        result.put("allocation", allocation);
+
+        Map<String, Object> gc = new LinkedHashMap<>();
+        gc.put("collections", end.gcCount - start.gcCount);
+        gc.put("millis", end.gcMillis - start.gcMillis);
+        result.put("gc", gc);
+
+        Map<String, Object> redisOps = new LinkedHashMap<>();
+        // less the INFO that took the first sample
+        long ops = Math.max(0, end.redisOps - start.redisOps - 1);
+        redisOps.put("ops", ops);
+        redisOps.put("opsPerRequest", round(ops / perRequest));
+        result.put("redis", redisOps);
+
+        Map<String, Object> upstreamCalls = new LinkedHashMap<>();
+        upstreamCalls.put("requests", end.upstreamRequests - start.upstreamRequests);
+        upstreamCalls.put("requestsPerRequest", round((end.upstreamRequests - start.upstreamRequests) / perRequest));
+        result.put("upstream", upstreamCalls);
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    /**
+     * The Redis the gateway runs against: a throwaway container, or the server given by
+     * {@code redis=host:port}. A separate connection reads the server's command count.
+     */
+    private static final class Redis implements AutoCloseable {
+
+        private static final DockerImageName IMAGE = DockerImageName.parse("redis:7-alpine");
+        private static final String COMMANDS = "total_commands_processed:";
+
+        private final GenericContainer<?> container;
+        private final String host;
+        private final int port;
+        private final RedisClient client;
+        private final StatefulRedisConnection<String, String> stats;
+
+        private Redis(GenericContainer<?> container, String host, int port) {
+            this.container = container;
+            this.host = host;
+            this.port = port;
+            this.client = RedisClient.create(RedisURI.create(host, port));
+            this.stats = client.connect();
+        }
+
+        static Redis start(String address) {
+            if (address.isBlank()) {
+                GenericContainer<?> container = new GenericContainer<>(IMAGE).withExposedPorts(6379);
+                container.start();
+                return new Redis(container, container.getHost(), container.getMappedPort(6379));
+            }
+            int colon = address.lastIndexOf(':');
+            return new Redis(null, colon < 0 ? address : address.substring(0, colon),
+                    colon < 0 ? 6379 : Integer.parseInt(address.substring(colon + 1)));
+        }
+
+        String description() {
+            return container != null ? IMAGE.asCanonicalNameString() : host + ":" + port;
+        }
+
+        /**
+         * Commands the server has processed; a script call counts once.
+         */
+        long commands() {
+            String info = stats.sync().info("stats");
+            int at = info.indexOf(COMMANDS) + COMMANDS.length();
+            int end = info.indexOf('\r', at);
+            return Long.parseLong(info.substring(at, end < 0 ? info.length() : end).trim());
+        }
+
+        @Override
+        public void close() {
+            stats.close();
+            client.shutdown();
+            if (container != null) container.stop();
+        }
+    }
+
+    /**
+     * Counters that move only when the gateway leaves its normal Redis path: failed Redis calls
+     * and calls the circuit breakers sent to their fallbacks.
+     */
+    private static final class Fallbacks {
+
+        private final MeterRegistry registry;
+        private final AtomicLong breakerErrors = new AtomicLong();
+        private final AtomicLong breakerRejected = new AtomicLong();
+
+        Fallbacks(ConfigurableApplicationContext gateway) {
+            this.registry = gateway.getBean(MeterRegistry.class);
+            CircuitBreakerRegistry breakers = gateway.getBean(ReactiveResilience4JCircuitBreakerFactory.class)
+                    .getCircuitBreakerRegistry();
+            for (String id : new String[]{RedisGuard.LIMITER, RedisGuard.CACHE}) {
+                breakers.circuitBreaker(id).getEventPublisher()
+                        .onError(event -> breakerErrors.incrementAndGet())
+                        .onCallNotPermitted(event -> breakerRejected.incrementAndGet());
+            }
+        }
+
+        Map<String, Long> counts() {
+            long redisErrors = registry.find("gateway.redis.latency").tag("outcome", "error").timers().stream()
+                    .mapToLong(Timer::count)
+                    .sum();
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("redisErrors", redisErrors);
+            counts.put("breakerErrors", breakerErrors.get());
+            counts.put("breakerRejected", breakerRejected.get());
+            return counts;
+        }
+
+        /**
+         * The counters that moved between two {@link #counts()}, with how much.
+         */
+        static Map<String, Long> since(Map<String, Long> before, Map<String, Long> after) {
+            Map<String, Long> moved = new LinkedHashMap<>();
+            after.forEach((name, count) -> {
+                long delta = count - before.get(name);
+                if (delta > 0) moved.put(name, delta);
+            });
+            return moved;
+        }
+    }
+
+    /**
+     * Process counters at one instant; the report is the difference of two.
+     */
+    private record Sample(long nanos, long allocatedBytes, long harnessAllocatedBytes, long redisOps,
+                          long upstreamRequests, long gcCount, long gcMillis) {
+
+        static Sample take(Redis redis, StubUpstream upstream) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long[] harness = Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().startsWith("loadtest"))
+                    .mapToLong(Thread::threadId)
+                    .toArray();
+            long harnessAllocated = Arrays.stream(threads.getThreadAllocatedBytes(harness))
+                    .filter(bytes -> bytes > 0)
+                    .sum();
+
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, collector.getCollectionCount());
+                gcMillis += Math.max(0, collector.getCollectionTime());
+            }
+
+            return new Sample(System.nanoTime(), threads.getTotalThreadAllocatedBytes(), harnessAllocated,
+                    redis.commands(), upstream.requests(), gcCount, gcMillis);
+        }
+    }
+
+    /**
+     * Settings, given as {@code name=value} arguments.
+     */
+    record Options(int warmupSeconds, int durationSeconds, int concurrency, int rps, int maxInFlight,
+                   List<Scenario> scenarios, int integrators, int blockedIntegrators, int hotKeys,
+                   int payloadBytes, int upstreamLatencyMillis, int upstreamJitterMillis,
+                   String redis, String report) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>(Map.ofEntries(
+                    Map.entry("warmup", "10"),
+                    Map.entry("duration", "30"),
+                    Map.entry("concurrency", "64"),
+                    Map.entry("rps", "0"),
+                    Map.entry("maxInFlight", "10000"),
+                    Map.entry("scenarios", "mixed,hits,misses,overlimit"),
+                    Map.entry("integrators", "50"),
+                    Map.entry("blockedIntegrators", "10"),
+                    Map.entry("hotKeys", "100"),
+                    Map.entry("payload", "2048"),
+                    Map.entry("upstreamLatency", "20"),
+                    Map.entry("upstreamJitter", "0"),
+                    Map.entry("redis", ""),
+                    Map.entry("report", "target/loadtest-report.json")));
+
+            for (String arg : args) {
+                String trimmed = arg.startsWith("--") ? arg.substring(2) : arg;
+                int eq = trimmed.indexOf('=');
+                String name = eq < 0 ? trimmed : trimmed.substring(0, eq);
+                if (!values.containsKey(name)) {
+                    throw new IllegalArgumentException("Unknown option " + name + ", known: " + new TreeMap<>(values).keySet());
+                }
+                values.put(name, eq < 0 ? "" : trimmed.substring(eq + 1));
+            }
+
+            List<Scenario> scenarios = Arrays.stream(values.get("scenarios").split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .map(s -> Scenario.valueOf(s.toUpperCase(Locale.ROOT)))
+                    .toList();
+            return new Options(
+                    Integer.parseInt(values.get("warmup")),
+                    Integer.parseInt(values.get("duration")),
+                    Integer.parseInt(values.get("concurrency")),
+                    Integer.parseInt(values.get("rps")),
+                    Integer.parseInt(values.get("maxInFlight")),
+                    scenarios,
+                    Integer.parseInt(values.get("integrators")),
+                    Math.max(1, Integer.parseInt(values.get("blockedIntegrators"))),
+                    Integer.parseInt(values.get("hotKeys")),
+                    Integer.parseInt(values.get("payload")),
+                    Integer.parseInt(values.get("upstreamLatency")),
+                    Integer.parseInt(values.get("upstreamJitter")),
+                    values.get("redis").trim(),
+                    values.get("report").trim());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package uz.nodir.ratelimitapigateway.loadtest;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:5:30 AM
+ * <p>
+ * Traffic mixes of the load test. {@code hitRatio} of the requests ask for one of a small set
+ * of keys that stay cached and the rest for a key never asked before; {@code overLimitShare}
+ * come from integrators whose own quota is already used up, so they are rejected with 429.
+ */
+
+enum Scenario {
+
+    MIXED(0.8, 0.1),
+    HITS(1.0, 0.0),
+    MISSES(0.0, 0.0),
+    OVERLIMIT(0.0, 1.0);
+
+    final double hitRatio;
+    final double overLimitShare;
+
+    Scenario(double hitRatio, double overLimitShare) {
+        this.hitRatio = hitRatio;
+        this.overLimitShare = overLimitShare;
+    }
+}
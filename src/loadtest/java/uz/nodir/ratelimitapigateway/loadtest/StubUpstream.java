@@ -0,0 +1,80 @@
+package uz.nodir.ratelimitapigateway.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:5:20 AM
+ * <p>
+ * Stands in for the smartBill upstream: answers every request with the same JSON body of
+ * {@code payloadBytes} after {@code latency} plus up to {@code jitter}. The body is filled with
+ * random hex, so it compresses about as well as real responses instead of to almost nothing.
+ * It runs on its own event loop so its allocations can be told apart from the gateway's.
+ */
+
+final class StubUpstream implements AutoCloseable {
+
+    private final DisposableServer server;
+    private final AtomicLong requests = new AtomicLong();
+
+    StubUpstream(int payloadBytes, Duration latency, Duration jitter, LoopResources loops, Scheduler timer) {
+        byte[] body = body(payloadBytes);
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .runOn(loops)
+                .handle((request, response) -> {
+                    requests.incrementAndGet();
+                    Mono<Void> send = response
+                            .header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                            .sendByteArray(Mono.just(body))
+                            .then();
+                    Duration delay = delay(latency, jitter);
+                    return delay.isZero() ? send : Mono.delay(delay, timer).then(send);
+                })
+                .bindNow();
+    }
+
+    int port() {
+        return server.port();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    private static Duration delay(Duration latency, Duration jitter) {
+        if (jitter.isZero()) return latency;
+        return latency.plusNanos(ThreadLocalRandom.current().nextLong(jitter.toNanos() + 1));
+    }
+
+    private static byte[] body(int payloadBytes) {
+        String prefix = "{\"inn\":\"000000000\",\"name\":\"stub upstream\",\"data\":\"";
+        String suffix = "\"}";
+        StringBuilder json = new StringBuilder(Math.max(payloadBytes, prefix.length() + suffix.length()));
+        json.append(prefix);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (json.length() < payloadBytes - suffix.length()) {
+            json.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return json.append(suffix).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,59 @@
+package uz.nodir.ratelimitapigateway.configuration;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import uz.nodir.ratelimitapigateway.model.property.RedisBatchProperty;
+import uz.nodir.ratelimitapigateway.model.property.RedisResilienceProperty;
+import uz.nodir.ratelimitapigateway.service.RedisGuard;
+
+import java.time.Duration;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:12:02 PM
+ */
+
+@Configuration
+@EnableConfigurationProperties({RedisResilienceProperty.class, RedisBatchProperty.class})
+public class RedisConfiguration {
+
+    @Bean
+    ReactiveRedisTemplate<String, byte[]> byteArrayRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
+        RedisSerializationContext<String, byte[]> context = RedisSerializationContext
+                .<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .hashValue(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, context);
+    }
+
+    @Bean
+    Customizer<ReactiveResilience4JCircuitBreakerFactory> redisCircuitBreakerCustomizer(RedisResilienceProperty property) {
+        CircuitBreakerConfig circuitBreaker = CircuitBreakerConfig.custom()
+                .failureRateThreshold(property.getFailureRateThreshold())
+                .slowCallRateThreshold(property.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(Duration.ofMillis(property.getTimeoutMillis()))
+                .slidingWindowSize(property.getSlidingWindowSize())
+                .minimumNumberOfCalls(property.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(Duration.ofMillis(property.getWaitInOpenStateMillis()))
+                .build();
+        TimeLimiterConfig timeLimiter = TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofMillis(property.getTimeoutMillis()))
+                .build();
+
+        return factory -> factory.configure(
+                builder -> builder.circuitBreakerConfig(circuitBreaker).timeLimiterConfig(timeLimiter),
+                RedisGuard.LIMITER, RedisGuard.CACHE);
+    }
+}
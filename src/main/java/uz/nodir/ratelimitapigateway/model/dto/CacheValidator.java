@@ -0,0 +1,17 @@
+package uz.nodir.ratelimitapigateway.model.dto;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:9:05 PM
+ * <p>
+ * What a conditional request is checked against, stored apart from the record it describes.
+ */
+
+public record CacheValidator(String etag, long lastModified, long freshUntil) {
+
+    public boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+}
@@ -0,0 +1,37 @@
+package uz.nodir.ratelimitapigateway.model.dto;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:12:10 PM
+ * <p>
+ * Decoded cache entry. The body is a view into the raw record, not a copy of it, unless the
+ * entry is chunked: then the record is only a manifest and the body is read chunk by chunk.
+ */
+
+public record CachedResponse(int status, HttpHeaders headers, byte[] data, int bodyOffset, int bodyLength,
+                             long storedAt, long freshUntil, int chunks) {
+
+    public boolean isChunked() {
+        return chunks > 0;
+    }
+
+    public boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+
+    public boolean isWithinStaleWindow(long now, long windowSeconds) {
+        return now - freshUntil < windowSeconds * 1000;
+    }
+
+    public DataBuffer body(DataBufferFactory factory) {
+        return factory.wrap(ByteBuffer.wrap(data, bodyOffset, bodyLength).slice());
+    }
+}
@@ -0,0 +1,29 @@
+package uz.nodir.ratelimitapigateway.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:11:40 AM
+ * <p>
+ * JSON error body of the gateway's own rejections. {@code status} is written last, so the rate
+ * limiter can append per-rejection fields after it.
+ */
+
+@JsonPropertyOrder({"code", "message", "status"})
+public record ErrorBody(String code, String message, int status) {
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    public byte[] toJson() {
+        try {
+            return om.writeValueAsBytes(this);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot render error body " + this, e);
+        }
+    }
+}
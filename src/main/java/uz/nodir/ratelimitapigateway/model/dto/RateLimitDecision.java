@@ -0,0 +1,17 @@
+package uz.nodir.ratelimitapigateway.model.dto;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:10:20 AM
+ * <p>
+ * {@code limit} is the quota {@code remaining} refers to, or -1 for the route's {@code limit}.
+ */
+
+public record RateLimitDecision(boolean allowed, long remaining, long retryAfterSeconds, long limit) {
+
+    public RateLimitDecision(boolean allowed, long remaining, long retryAfterSeconds) {
+        this(allowed, remaining, retryAfterSeconds, -1);
+    }
+}
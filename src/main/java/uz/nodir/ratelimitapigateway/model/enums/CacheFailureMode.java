@@ -0,0 +1,21 @@
+package uz.nodir.ratelimitapigateway.model.enums;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:6:07 PM
+ * <p>
+ * What the response cache does while Redis is slow or unreachable.
+ */
+
+public enum CacheFailureMode {
+    /**
+     * Keep serving and filling the in-process L1 tier, if the route has one.
+     */
+    L1_ONLY,
+    /**
+     * Forward every request without caching.
+     */
+    BYPASS
+}
@@ -0,0 +1,25 @@
+package uz.nodir.ratelimitapigateway.model.enums;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:9:40 PM
+ * <p>
+ * Which requests share the counter of a quota.
+ */
+
+public enum QuotaScope {
+    /**
+     * One integrator on this route.
+     */
+    INTEGRATOR_ROUTE,
+    /**
+     * One integrator on every route that declares the same quota.
+     */
+    INTEGRATOR,
+    /**
+     * Everyone on this route.
+     */
+    ROUTE
+}
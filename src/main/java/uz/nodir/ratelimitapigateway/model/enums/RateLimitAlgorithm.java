@@ -0,0 +1,31 @@
+package uz.nodir.ratelimitapigateway.model.enums;
+
+import lombok.Getter;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:10:12 AM
+ */
+
+@Getter
+public enum RateLimitAlgorithm {
+    FIXED_WINDOW("scripts/ratelimit/fixed_window.lua", ""),
+    SLIDING_WINDOW_LOG("scripts/ratelimit/sliding_window_log.lua", ":swl"),
+    SLIDING_WINDOW_COUNTER("scripts/ratelimit/sliding_window_counter.lua", ":swc"),
+    TOKEN_BUCKET("scripts/ratelimit/token_bucket.lua", ":tb");
+
+    private final String script;
+
+    /**
+     * Appended to the limiter key so that switching the algorithm of a route never
+     * runs a script against a key of another Redis type.
+     */
+    private final String keySuffix;
+
+    RateLimitAlgorithm(String script, String keySuffix) {
+        this.script = script;
+        this.keySuffix = keySuffix;
+    }
+}
@@ -0,0 +1,25 @@
+package uz.nodir.ratelimitapigateway.model.enums;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:6:05 PM
+ * <p>
+ * What the rate limiter does while Redis is slow or unreachable.
+ */
+
+public enum RedisFailurePolicy {
+    /**
+     * Limit in memory on every node, with the route limit divided by the node count.
+     */
+    LOCAL,
+    /**
+     * Let every request through.
+     */
+    FAIL_OPEN,
+    /**
+     * Reject every request.
+     */
+    FAIL_CLOSED
+}
@@ -0,0 +1,40 @@
+package uz.nodir.ratelimitapigateway.model.property;
+
+import lombok.Data;
+import org.springframework.cloud.gateway.support.HasRouteId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:1:30 AM
+ */
+
+@Data
+public class AdaptiveConcurrencyProperty implements HasRouteId {
+    private String routeId;
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 500;
+    // latency may grow to tolerance times the no-load latency before the limit is lowered
+    private double tolerance = 1.5;
+    // on a window with upstream errors or timeouts the limit is multiplied by backoffRatio
+    private double backoffRatio = 0.9;
+    // weight of a new estimate against the current limit
+    private double smoothing = 0.2;
+    // the limit is re-estimated after this many completed requests or this long, whichever comes later
+    private int windowSamples = 20;
+    private long windowMillis = 500;
+
+    // integrators of tier 0 are shed last; integrators not listed form the tier after the last one
+    private List<List<String>> priorityTiers = new ArrayList<>();
+    // every tier below the first may use this much less of the limit than the one above it
+    private int tierHeadroomPercent = 10;
+
+    private int statusCode = 503;
+    private String failedCode = "UPSTREAM_OVERLOADED";
+    private String failedMessage = "Service is busy, try again shortly";
+}
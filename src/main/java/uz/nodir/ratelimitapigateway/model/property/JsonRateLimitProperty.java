@@ -5,6 +5,12 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import uz.nodir.ratelimitapigateway.model.enums.RateLimitAlgorithm;
+import uz.nodir.ratelimitapigateway.model.enums.RedisFailurePolicy;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Author:Nodir
@@ -14,14 +20,49 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 
 @Data
-public class JsonRateLimitProperty {
+public class JsonRateLimitProperty implements HasRouteId {
+    private String routeId;
     private int limit;
     private int windowSeconds;
-    private int statusCode;
+    private int statusCode = 429;
     private boolean requireIntegratorId;
-    private int missingIntegratorStatus;
+    private int missingIntegratorStatus = 400;
     private String missingIntegratorCode;
     private String missingIntegratorMessage;
     private String failedCode;
     private String failedMessage;
+    private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+    private RedisFailurePolicy redisFailurePolicy = RedisFailurePolicy.LOCAL;
+
+    // when set, replaces limit/windowSeconds: every quota must admit the request, all are counted in one Redis call
+    private List<QuotaProperty> quotas = new ArrayList<>();
+
+    // FIXED_WINDOW only: each node reserves leasePercent of the limit at a time and spends it locally
+    private boolean leasingEnabled;
+    private double leasePercent = 5;
+    private long leaseMaxMillis = 1000;
+
+    /**
+     * The same route settings with another limit, for an integrator that has its own quota.
+     */
+    public JsonRateLimitProperty withLimit(int limit, int windowSeconds) {
+        JsonRateLimitProperty copy = new JsonRateLimitProperty();
+        copy.setRouteId(routeId);
+        copy.setLimit(limit);
+        copy.setWindowSeconds(windowSeconds > 0 ? windowSeconds : this.windowSeconds);
+        copy.setStatusCode(statusCode);
+        copy.setRequireIntegratorId(requireIntegratorId);
+        copy.setMissingIntegratorStatus(missingIntegratorStatus);
+        copy.setMissingIntegratorCode(missingIntegratorCode);
+        copy.setMissingIntegratorMessage(missingIntegratorMessage);
+        copy.setFailedCode(failedCode);
+        copy.setFailedMessage(failedMessage);
+        copy.setAlgorithm(algorithm);
+        copy.setRedisFailurePolicy(redisFailurePolicy);
+        copy.setQuotas(quotas);
+        copy.setLeasingEnabled(leasingEnabled);
+        copy.setLeasePercent(leasePercent);
+        copy.setLeaseMaxMillis(leaseMaxMillis);
+        return copy;
+    }
 }
@@ -0,0 +1,18 @@
+package uz.nodir.ratelimitapigateway.model.property;
+
+import lombok.Data;
+import uz.nodir.ratelimitapigateway.model.enums.QuotaScope;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:9:42 PM
+ */
+
+@Data
+public class QuotaProperty {
+    private QuotaScope scope = QuotaScope.INTEGRATOR_ROUTE;
+    private int limit;
+    private int windowSeconds;
+}
@@ -0,0 +1,21 @@
+package uz.nodir.ratelimitapigateway.model.property;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:10:05 PM
+ */
+
+@Data
+@ConfigurationProperties(prefix = "gateway.redis.batch")
+public class RedisBatchProperty {
+    private boolean enabled;
+    // a batch is flushed as soon as it holds this many commands
+    private int maxSize = 128;
+    // how long a batch may wait for more commands, only applied while batches are actually forming
+    private long windowMicros = 100;
+}
@@ -0,0 +1,24 @@
+package uz.nodir.ratelimitapigateway.model.property;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:6:10 PM
+ */
+
+@Data
+@ConfigurationProperties(prefix = "gateway.redis")
+public class RedisResilienceProperty {
+    private long timeoutMillis = 150;
+    private float failureRateThreshold = 50;
+    private float slowCallRateThreshold = 80;
+    private int slidingWindowSize = 50;
+    private int minimumNumberOfCalls = 20;
+    private long waitInOpenStateMillis = 5000;
+    // gateway nodes sharing the limits, the local fallback limiter gets limit / nodeCount
+    private int nodeCount = 1;
+}
@@ -1,6 +1,11 @@
 package uz.nodir.ratelimitapigateway.model.property;
 
 import lombok.Data;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import uz.nodir.ratelimitapigateway.model.enums.CacheFailureMode;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Author:Nodir
@@ -11,11 +16,47 @@ import lombok.Data;
 
 
 @Data
-public class ResponseCacheProperty {
+public class ResponseCacheProperty implements HasRouteId {
+    private String routeId;
     private long ttlSeconds;
     private int maxBytes;
     private boolean only200;
     private boolean jsonOnly;
     private boolean addCacheHeader;
     private boolean keyByIntegrator;
+    // request headers that always take part in the key; headers named in an upstream Vary are added on their own
+    private List<String> keyHeaders = new ArrayList<>();
+    // entries are indexed by route, integrator, path prefix and the tags the upstream sends in tagHeader
+    private String tagHeader = "Cache-Tag";
+    private int tagPathDepth = 3;
+    private CacheFailureMode redisFailureMode = CacheFailureMode.L1_ONLY;
+    // after ttlSeconds an entry may still be served while it is refreshed in the background
+    private long staleWhileRevalidateSeconds;
+    // ... or instead of an upstream error or timeout
+    private long staleIfErrorSeconds;
+
+    // gzip stored bodies of at least compressionMinBytes; served as-is to clients that accept gzip
+    private boolean compressionEnabled;
+    private int compressionMinBytes = 1024;
+    private int compressionLevel = 6;
+
+    // bodies over maxBytes are streamed to the client and stored as chunkBytes-sized chunks, up to chunkedMaxBytes;
+    // a hit reads at most chunkPrefetch chunks ahead of the client
+    private boolean chunkedEnabled;
+    private int chunkBytes = 64 * 1024;
+    private long chunkedMaxBytes = 32L * 1024 * 1024;
+    private int chunkPrefetch = 2;
+
+    // in-process L1 tier checked before Redis
+    private boolean l1Enabled;
+    private int l1MaxEntries = 10_000;
+    private long l1MaxBytes = 64L * 1024 * 1024;
+    private long l1TtlSeconds = 5;
+
+    // single-flight on misses: one request per key goes upstream, the rest wait for its result
+    private boolean coalesceEnabled;
+    private long coalesceTimeoutMillis = 5000;
+    private boolean coalesceLockEnabled;
+    private long coalesceLockTtlMillis = 5000;
+    private long coalescePollMillis = 50;
 }
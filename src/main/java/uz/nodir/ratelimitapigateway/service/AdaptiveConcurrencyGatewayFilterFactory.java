@@ -0,0 +1,104 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import uz.nodir.ratelimitapigateway.model.dto.ErrorBody;
+import uz.nodir.ratelimitapigateway.model.property.AdaptiveConcurrencyProperty;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:2:05 AM
+ * <p>
+ * Caps the requests a route has in flight to its upstream at a limit that follows the upstream's
+ * latency and errors, see {@link AdaptiveConcurrencyLimiter}. Requests over the limit are
+ * answered at once with the same JSON error body as the rate limiter; lower priority tiers
+ * reach their share of the limit first. Runs after the response cache and the rate limiter, so
+ * neither hits nor rejected requests count.
+ */
+
+@Slf4j
+@Component
+public class AdaptiveConcurrencyGatewayFilterFactory extends AbstractGatewayFilterFactory<AdaptiveConcurrencyProperty> {
+
+    private static final String INTEGRATOR_HEADER = "X-Real-IP";
+    // after the response cache and the route's other filters, which are ordered by their position
+    // from 1, so requests the rate limiter rejects never take a slot or give a latency sample
+    private static final int ORDER = RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER - 1;
+
+    private final GatewayMetrics metrics;
+
+    public AdaptiveConcurrencyGatewayFilterFactory(GatewayMetrics metrics) {
+        super(AdaptiveConcurrencyProperty.class);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public GatewayFilter apply(AdaptiveConcurrencyProperty cfg) {
+        log.info("Taken config for adaptive concurrency: {}", cfg);
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(cfg);
+        metrics.concurrencyLimiter(cfg.getRouteId(), limiter);
+        Map<String, Integer> tiers = tiers(cfg.getPriorityTiers());
+        int defaultTier = cfg.getPriorityTiers().size();
+        HttpStatus status = HttpStatus.valueOf(cfg.getStatusCode());
+        byte[] body = new ErrorBody(cfg.getFailedCode(), cfg.getFailedMessage(), cfg.getStatusCode()).toJson();
+
+        GatewayFilter core = (exchange, chain) -> {
+            String integrator = exchange.getRequest().getHeaders().getFirst(INTEGRATOR_HEADER);
+            int tier = integrator != null
+                    ? tiers.getOrDefault(integrator.trim().toLowerCase(Locale.ROOT), defaultTier)
+                    : defaultTier;
+
+            if (!limiter.tryAcquire(tier)) {
+                metrics.concurrencyShed(cfg.getRouteId(), tier);
+                ServerHttpResponse response = exchange.getResponse();
+                response.setStatusCode(status);
+                response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+            }
+
+            long start = System.nanoTime();
+            return chain.filter(exchange)
+                    .doFinally(signal -> {
+                        HttpStatusCode code = exchange.getResponse().getStatusCode();
+                        AdaptiveConcurrencyLimiter.Outcome outcome = signal == SignalType.CANCEL
+                                ? AdaptiveConcurrencyLimiter.Outcome.IGNORED
+                                : signal == SignalType.ON_ERROR || (code != null && code.is5xxServerError())
+                                ? AdaptiveConcurrencyLimiter.Outcome.DROPPED
+                                : AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+                        limiter.release(System.nanoTime() - start, outcome);
+                    });
+        };
+
+        return new OrderedGatewayFilter(core, ORDER);
+    }
+
+    private static Map<String, Integer> tiers(List<List<String>> priorityTiers) {
+        Map<String, Integer> tiers = new HashMap<>();
+        for (int tier = 0; tier < priorityTiers.size(); tier++) {
+            for (String integrator : priorityTiers.get(tier)) {
+                tiers.putIfAbsent(integrator.trim().toLowerCase(Locale.ROOT), tier);
+            }
+        }
+        return tiers;
+    }
+}
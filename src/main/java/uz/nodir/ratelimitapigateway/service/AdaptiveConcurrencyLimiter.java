@@ -0,0 +1,122 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import uz.nodir.ratelimitapigateway.model.property.AdaptiveConcurrencyProperty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:1:40 AM
+ * <p>
+ * In-flight limit of one route, re-estimated from the upstream's latency every window:
+ * <pre>
+ * gradient = clamp(tolerance * longRtt / windowRtt, 0.5, 1)
+ * estimate = limit * gradient + sqrt(limit)
+ * </pre>
+ * {@code longRtt} is a slow average that stands for the no-load latency, so the limit grows by
+ * about {@code sqrt(limit)} while latency stays within {@code tolerance} of it and shrinks in
+ * proportion once the upstream starts queueing. A window with errors or timeouts multiplies the
+ * limit by {@code backoffRatio} instead. The limit only grows in windows that actually used
+ * half of it, so a quiet route does not build up a limit it never tested.
+ */
+
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_RTT_WEIGHT = 0.05;
+
+    private final AdaptiveConcurrencyProperty cfg;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // window state, guarded by this
+    private long windowStart = System.nanoTime();
+    private long rttSum;
+    private int samples;
+    private int drops;
+    private int maxInFlight;
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimiter(AdaptiveConcurrencyProperty cfg) {
+        this.cfg = cfg;
+        this.limit = clamp(cfg.getInitialLimit());
+    }
+
+    /**
+     * Takes a slot if the tier may still use one; tier 0 may use the whole limit, every
+     * following tier {@code tierHeadroomPercent} less of it.
+     */
+    public boolean tryAcquire(int tier) {
+        double share = Math.max(0.1, 1 - tier * cfg.getTierHeadroomPercent() / 100.0);
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * Releases the slot. {@code rttNanos} is sampled unless the request failed or was cancelled.
+     */
+    public void release(long rttNanos, Outcome outcome) {
+        int current = inFlight.getAndDecrement();
+        if (outcome == Outcome.IGNORED) return;
+        synchronized (this) {
+            maxInFlight = Math.max(maxInFlight, current);
+            if (outcome == Outcome.DROPPED) drops++;
+            else {
+                rttSum += rttNanos;
+                samples++;
+            }
+            long now = System.nanoTime();
+            if (samples + drops >= cfg.getWindowSamples() && now - windowStart >= cfg.getWindowMillis() * 1_000_000) {
+                update();
+                windowStart = now;
+                rttSum = 0;
+                samples = 0;
+                drops = 0;
+                maxInFlight = 0;
+            }
+        }
+    }
+
+    private void update() {
+        double current = limit;
+        double estimate;
+        if (drops > 0) {
+            estimate = current * cfg.getBackoffRatio();
+        } else {
+            double rtt = (double) rttSum / samples;
+            longRtt = longRtt == 0 ? rtt : longRtt * (1 - LONG_RTT_WEIGHT) + rtt * LONG_RTT_WEIGHT;
+            // after a long overload the average lags behind the recovered latency
+            if (longRtt > rtt * 2) longRtt *= 0.95;
+
+            double gradient = Math.max(0.5, Math.min(1.0, cfg.getTolerance() * longRtt / rtt));
+            estimate = current * gradient + Math.sqrt(current);
+            if (estimate > current && maxInFlight < current / 2) estimate = current;
+        }
+        limit = clamp(current * (1 - cfg.getSmoothing()) + estimate * cfg.getSmoothing());
+    }
+
+    private double clamp(double value) {
+        return Math.max(cfg.getMinLimit(), Math.min(cfg.getMaxLimit(), value));
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        // upstream error or timeout, lowers the limit
+        DROPPED,
+        // cancelled by the client, says nothing about the upstream
+        IGNORED
+    }
+}
@@ -0,0 +1,136 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:8:30 PM
+ * <p>
+ * Gzip of cached bodies. A compressed record is an ordinary record whose headers say
+ * {@code Content-Encoding: gzip}; it is sent as stored to clients that accept gzip and
+ * inflated for the others.
+ */
+
+public final class CacheCompression {
+
+    private static final String GZIP = "gzip";
+
+    private CacheCompression() {
+    }
+
+    /**
+     * Bodies the upstream already encoded are stored as they are.
+     */
+    public static boolean shouldCompress(ResponseCacheProperty cfg, HttpHeaders headers, int bodyLength) {
+        return cfg.isCompressionEnabled()
+                && bodyLength >= cfg.getCompressionMinBytes()
+                && !headers.containsKey(HttpHeaders.CONTENT_ENCODING);
+    }
+
+    /**
+     * Compresses the chunks without consuming them, so they can still be written afterwards.
+     */
+    public static byte[] gzip(List<? extends DataBuffer> chunks, int bodyLength, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bodyLength / 4));
+        byte[] scratch = null;
+        try (GZIPOutputStream gzip = new LeveledGzipOutputStream(out, level)) {
+            for (DataBuffer chunk : chunks) {
+                try (DataBuffer.ByteBufferIterator it = chunk.readableByteBuffers()) {
+                    while (it.hasNext()) {
+                        ByteBuffer buf = it.next();
+                        if (buf.hasArray()) {
+                            gzip.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                            continue;
+                        }
+                        if (scratch == null) scratch = new byte[8192];
+                        while (buf.hasRemaining()) {
+                            int n = Math.min(scratch.length, buf.remaining());
+                            buf.get(scratch, 0, n);
+                            gzip.write(scratch, 0, n);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Headers stored with a body the gateway compressed, with the ETag of the gzip form.
+     */
+    public static HttpHeaders compressedHeaders(HttpHeaders headers) {
+        HttpHeaders stored = new HttpHeaders();
+        stored.putAll(headers);
+        stored.remove(HttpHeaders.CONTENT_LENGTH);
+        stored.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+        String etag = headers.getFirst(HttpHeaders.ETAG);
+        if (etag != null) stored.set(HttpHeaders.ETAG, CacheValidation.gzipTag(etag));
+        addVary(stored);
+        return stored;
+    }
+
+    public static boolean isGzip(HttpHeaders headers) {
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        return encoding != null && GZIP.equalsIgnoreCase(encoding.trim());
+    }
+
+    public static byte[] gunzip(CachedResponse entry) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(entry.data(), entry.bodyOffset(), entry.bodyLength()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    public static boolean acceptsGzip(HttpHeaders request) {
+        for (String value : request.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String token : value.split(",")) {
+                int semicolon = token.indexOf(';');
+                String coding = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+                if (!GZIP.equalsIgnoreCase(coding) && !"*".equals(coding)) continue;
+                return semicolon < 0 || !isZeroQuality(token.substring(semicolon + 1));
+            }
+        }
+        return false;
+    }
+
+    public static void addVary(HttpHeaders headers) {
+        if (!headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING)) headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private static boolean isZeroQuality(String params) {
+        for (String param : params.split(";")) {
+            String p = param.trim();
+            if (p.length() > 2 && (p.charAt(0) == 'q' || p.charAt(0) == 'Q') && p.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(p.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(ByteArrayOutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:11:58 PM
+ * <p>
+ * {@code POST /actuator/cache} with {@code {"tag": "..."}} purges every cached response
+ * carrying the tag, see {@link CacheTags}.
+ */
+
+@Component
+@Endpoint(id = "cache")
+public class CacheEndpoint {
+
+    private final ResponseCacheStore store;
+
+    public CacheEndpoint(ResponseCacheStore store) {
+        this.store = store;
+    }
+
+    @WriteOperation
+    public Mono<Map<String, Object>> purge(String tag) {
+        return store.purge(tag).map(purged -> Map.of("tag", tag, "purged", purged));
+    }
+}
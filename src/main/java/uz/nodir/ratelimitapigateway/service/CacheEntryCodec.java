@@ -0,0 +1,185 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import uz.nodir.ratelimitapigateway.model.dto.CacheValidator;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:12:18 PM
+ * <p>
+ * Binary cache record:
+ * <pre>
+ * byte   magic (0xCE)
+ * byte   version
+ * long   stored at, epoch millis          (since version 2)
+ * long   fresh until, epoch millis        (since version 2)
+ * int    chunk count                      (since version 3)
+ * short  status
+ * short  header count, then per header:
+ *        short name length, name, short value count, per value: short length, value
+ * int    body length
+ * bytes  body                             (only if chunk count is 0)
+ * </pre>
+ * A record with chunks is a manifest: its body is stored apart, in {@code chunk count} keys of at most
+ * {@code chunkBytes} each (see {@link ResponseCacheStore#chunkKey}), and body length is their total.
+ * The validator of a record is stored next to it as {@code freshUntil|lastModified|etag} in UTF-8.
+ * <p>
+ * Version 1 records and records written by older gateways as JSON maps ({@code status}, {@code headers} as a JSON
+ * string, {@code body} as Base64) are still decoded and treated as fresh until they expire.
+ */
+
+public final class CacheEntryCodec {
+
+    static final byte MAGIC = (byte) 0xCE;
+    static final byte VERSION = 3;
+
+    private static final ObjectMapper om = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> MAP = new TypeReference<>() {
+    };
+
+    private CacheEntryCodec() {
+    }
+
+    public static byte[] encode(int status, HttpHeaders headers, byte[] body, long storedAt, long freshUntil) {
+        return writeHeader(status, headers, body.length, 0, storedAt, freshUntil).put(body).array();
+    }
+
+    public static byte[] encodeManifest(int status, HttpHeaders headers, long bodyLength, int chunks,
+                                        long storedAt, long freshUntil) {
+        if (bodyLength > Integer.MAX_VALUE) throw new IllegalArgumentException("Body too large to cache");
+        return writeHeader(status, headers, (int) bodyLength, chunks, storedAt, freshUntil).array();
+    }
+
+    /**
+     * Encodes the body straight from the chunks it arrived in; each chunk is copied exactly once,
+     * into the record. Chunks are consumed but not released.
+     */
+    public static byte[] encode(int status, HttpHeaders headers, List<? extends DataBuffer> body, int bodyLength,
+                                long storedAt, long freshUntil) {
+        ByteBuffer out = writeHeader(status, headers, bodyLength, 0, storedAt, freshUntil);
+        for (DataBuffer chunk : body) {
+            int n = chunk.readableByteCount();
+            chunk.read(out.array(), out.position(), n);
+            out.position(out.position() + n);
+        }
+        return out.array();
+    }
+
+    /**
+     * Allocates the whole record and writes everything up to, and including, the body length.
+     */
+    private static ByteBuffer writeHeader(int status, HttpHeaders headers, int bodyLength, int chunks,
+                                          long storedAt, long freshUntil) {
+        List<byte[]> names = new ArrayList<>(headers.size());
+        List<List<byte[]>> values = new ArrayList<>(headers.size());
+        int size = 1 + 1 + 8 + 8 + 4 + 2 + 2 + 4 + (chunks > 0 ? 0 : bodyLength);
+
+        for (Map.Entry<String, List<String>> header : headers.headerSet()) {
+            byte[] name = checkLength(header.getKey().getBytes(StandardCharsets.UTF_8));
+            List<byte[]> encoded = new ArrayList<>(header.getValue().size());
+            size += 2 + name.length + 2;
+            for (String value : header.getValue()) {
+                byte[] v = checkLength(value.getBytes(StandardCharsets.UTF_8));
+                encoded.add(v);
+                size += 2 + v.length;
+            }
+            names.add(name);
+            values.add(encoded);
+        }
+        if (names.size() > 0xFFFF) throw new IllegalArgumentException("Too many headers to cache");
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(MAGIC).put(VERSION).putLong(storedAt).putLong(freshUntil).putInt(chunks);
+        out.putShort((short) status).putShort((short) names.size());
+        for (int i = 0; i < names.size(); i++) {
+            out.putShort((short) names.get(i).length).put(names.get(i));
+            out.putShort((short) values.get(i).size());
+            for (byte[] v : values.get(i)) out.putShort((short) v.length).put(v);
+        }
+        return out.putInt(bodyLength);
+    }
+
+    public static CachedResponse decode(byte[] data) throws IOException {
+        if (data.length > 0 && data[0] == '{') return decodeLegacy(data);
+        if (data.length < 2 || data[0] != MAGIC || data[1] < 1 || data[1] > VERSION)
+            throw new IOException("Unknown cache record format");
+
+        ByteBuffer in = ByteBuffer.wrap(data);
+        in.position(2);
+        long storedAt = 0;
+        long freshUntil = Long.MAX_VALUE;
+        if (data[1] >= 2) {
+            storedAt = in.getLong();
+            freshUntil = in.getLong();
+        }
+        int chunks = data[1] >= 3 ? in.getInt() : 0;
+        int status = in.getShort();
+        int headerCount = in.getShort() & 0xFFFF;
+
+        HttpHeaders headers = new HttpHeaders();
+        for (int i = 0; i < headerCount; i++) {
+            String name = readString(in);
+            int valueCount = in.getShort() & 0xFFFF;
+            for (int j = 0; j < valueCount; j++) headers.add(name, readString(in));
+        }
+
+        int bodyLength = in.getInt();
+        if (chunks < 0 || bodyLength < 0 || (chunks == 0 && bodyLength > in.remaining()))
+            throw new IOException("Truncated cache record");
+        return new CachedResponse(status, headers, data, in.position(), bodyLength, storedAt, freshUntil, chunks);
+    }
+
+    public static byte[] encodeValidator(CacheValidator validator) {
+        String etag = validator.etag() != null ? validator.etag() : "";
+        return (validator.freshUntil() + "|" + validator.lastModified() + "|" + etag).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static CacheValidator decodeValidator(byte[] data) throws IOException {
+        String s = new String(data, StandardCharsets.UTF_8);
+        int first = s.indexOf('|');
+        int second = first < 0 ? -1 : s.indexOf('|', first + 1);
+        if (second < 0) throw new IOException("Unknown cache validator format");
+        try {
+            String etag = s.substring(second + 1);
+            return new CacheValidator(etag.isEmpty() ? null : etag,
+                    Long.parseLong(s, first + 1, second, 10),
+                    Long.parseLong(s, 0, first, 10));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unknown cache validator format", e);
+        }
+    }
+
+    private static byte[] checkLength(byte[] bytes) {
+        if (bytes.length > 0xFFFF) throw new IllegalArgumentException("Header too large to cache");
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getShort() & 0xFFFF;
+        String s = new String(in.array(), in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+
+    private static CachedResponse decodeLegacy(byte[] data) throws IOException {
+        Map<String, String> m = om.readValue(data, MAP);
+        HttpHeaders headers = new HttpHeaders();
+        om.readValue(m.get("headers"), MAP).forEach(headers::add);
+        byte[] body = Base64.getDecoder().decode(m.get("body"));
+        return new CachedResponse(Integer.parseInt(m.get("status")), headers, body, 0, body.length, 0, Long.MAX_VALUE, 0);
+    }
+}
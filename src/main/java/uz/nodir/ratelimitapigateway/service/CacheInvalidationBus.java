@@ -0,0 +1,95 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:11:20 AM
+ * <p>
+ * Keeps the L1 tiers of all gateway nodes consistent: every node that writes a cache
+ * entry to Redis publishes its key, and the other nodes drop their local copy. A message
+ * may carry several keys.
+ */
+
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+
+    private static final String CHANNEL = "gateway:cache:invalidate";
+    private static final char SEPARATOR = '|';
+
+    private final ReactiveStringRedisTemplate redis;
+    private final GatewayMetrics metrics;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, NearCache> nearCaches = new ConcurrentHashMap<>();
+    private Disposable subscription;
+
+    public CacheInvalidationBus(ReactiveStringRedisTemplate redis, GatewayMetrics metrics) {
+        this.redis = redis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers the L1 tier of a route. Re-applying a route's filter replaces its previous tier.
+     */
+    public void register(String routeId, NearCache nearCache) {
+        nearCaches.put(routeId != null ? routeId : "default", nearCache);
+    }
+
+    public Mono<Long> publish(String key) {
+        return metrics.redis("cache.publish", redis.convertAndSend(CHANNEL, nodeId + SEPARATOR + key))
+                .onErrorResume(err -> {
+                    log.debug("Cache invalidation publish error {}: {}", key, err.toString());
+                    return Mono.just(0L);
+                });
+    }
+
+    /**
+     * Drops the keys from the L1 tiers of this node right away and from the others by one message.
+     */
+    public Mono<Long> invalidate(List<String> keys) {
+        if (keys.isEmpty()) return Mono.just(0L);
+        keys.forEach(this::invalidateLocal);
+        return publish(String.join(String.valueOf(SEPARATOR), keys));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        subscription = RedisChannels.listen(redis, CHANNEL).subscribe(this::onMessage);
+    }
+
+    private void onMessage(String payload) {
+        int idx = payload.indexOf(SEPARATOR);
+        if (idx < 0 || idx == nodeId.length() && payload.startsWith(nodeId)) return;
+
+        int from = idx + 1;
+        for (int to = payload.indexOf(SEPARATOR, from); to >= 0; to = payload.indexOf(SEPARATOR, from)) {
+            invalidateLocal(payload.substring(from, to));
+            from = to + 1;
+        }
+        invalidateLocal(payload.substring(from));
+    }
+
+    private void invalidateLocal(String key) {
+        nearCaches.values().forEach(nearCache -> nearCache.invalidate(key));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (subscription != null) subscription.dispose();
+    }
+}
@@ -0,0 +1,224 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:11:20 PM
+ * <p>
+ * Per-route cache keys of the form {@code cache:<routeId>:<hash>}. The hash is the first
+ * 128 bits of a SHA-256 over the method, path, query parameters sorted by name (every value,
+ * in request order), the allowlisted and learned request headers, the integrator and the
+ * target path. Fields are written as UTF-8 straight into the digest, separated by bytes
+ * that never occur in UTF-8, so no intermediate strings are built.
+ * <p>
+ * Headers named in an upstream {@code Vary} are learned: the response that revealed them is
+ * not cached, and keys of later requests include them. Every node learns them the same way,
+ * so no node stores a variant under a key that does not tell the variants apart.
+ */
+
+public class CacheKeyBuilder {
+
+    public static final String INTEGRATOR_HEADER = "X-Integrator-Id";
+    // a misbehaving upstream must not grow the key without bound
+    private static final int MAX_HEADERS = 16;
+    private static final byte FIELD = (byte) 0xFF;
+    private static final byte NAME = (byte) 0xFE;
+    private static final byte VALUE = (byte) 0xFD;
+    private static final ThreadLocal<Hasher> HASHER = ThreadLocal.withInitial(Hasher::new);
+
+    private final String prefix;
+    private final boolean keyByIntegrator;
+    // lower-case and sorted, replaced as a whole when a Vary header is learned
+    private volatile String[] headers;
+
+    public CacheKeyBuilder(ResponseCacheProperty cfg) {
+        this.prefix = "cache:" + (cfg.getRouteId() != null ? cfg.getRouteId() : "default") + ':';
+        this.keyByIntegrator = cfg.isKeyByIntegrator();
+        this.headers = cfg.getKeyHeaders().stream()
+                .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    public String build(ServerWebExchange exchange) {
+        ServerHttpRequest req = exchange.getRequest();
+        Hasher hasher = HASHER.get();
+
+        hasher.field().value(req.getMethod().name());
+        hasher.field().value(req.getPath().pathWithinApplication().value());
+
+        hasher.field();
+        MultiValueMap<String, String> params = req.getQueryParams();
+        if (!params.isEmpty()) {
+            String[] names = params.keySet().toArray(String[]::new);
+            if (names.length > 1) Arrays.sort(names);
+            for (String name : names) {
+                hasher.name(name);
+                for (String value : params.get(name)) hasher.value(value != null ? value : "");
+            }
+        }
+
+        HttpHeaders requestHeaders = req.getHeaders();
+        hasher.field();
+        for (String name : headers) {
+            hasher.name(name);
+            for (String value : requestHeaders.getOrEmpty(name)) hasher.value(value.trim());
+        }
+
+        hasher.field();
+        if (keyByIntegrator) {
+            String integrator = requestHeaders.getFirst(INTEGRATOR_HEADER);
+            if (integrator == null || integrator.isBlank()) hasher.value("no-int");
+            else hasher.lowerCaseValue(integrator.trim());
+        }
+
+        hasher.field();
+        URI target = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (target != null) hasher.value(target.getPath());
+
+        return prefix + hasher.finish();
+    }
+
+    /**
+     * False if the response must not be stored under the key of its request: it varies on
+     * everything, or on a header the key does not include yet (which is learned for later keys).
+     * Accept-Encoding is ignored, the cache picks the encoding itself.
+     */
+    public boolean covers(HttpHeaders response) {
+        List<String> vary = response.getVary();
+        if (vary.isEmpty()) return true;
+
+        boolean covered = true;
+        for (String name : vary) {
+            if ("*".equals(name)) return false;
+            if (HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(name)) continue;
+            if (keyByIntegrator && INTEGRATOR_HEADER.equalsIgnoreCase(name)) continue;
+            if (includes(name)) continue;
+            if (!learn(name)) return false;
+            covered = false;
+        }
+        return covered;
+    }
+
+    private boolean includes(String name) {
+        for (String header : headers) {
+            if (header.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the header to the key, unless that would exceed {@link #MAX_HEADERS}.
+     */
+    private synchronized boolean learn(String name) {
+        if (includes(name)) return true;
+        if (headers.length >= MAX_HEADERS) return false;
+
+        List<String> next = new ArrayList<>(Arrays.asList(headers));
+        next.add(name.toLowerCase(Locale.ROOT));
+        next.sort(null);
+        headers = next.toArray(String[]::new);
+        return true;
+    }
+
+    List<String> headers() {
+        return List.of(headers);
+    }
+
+    /**
+     * Reusable per thread: a digest and a small buffer the UTF-8 bytes are encoded into.
+     */
+    private static final class Hasher {
+
+        private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+        private final MessageDigest digest;
+        private final byte[] buf = new byte[256];
+        private int pos;
+
+        Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Hasher field() {
+            put(FIELD);
+            return this;
+        }
+
+        void name(String s) {
+            put(NAME);
+            utf8(s, false);
+        }
+
+        void value(String s) {
+            put(VALUE);
+            utf8(s, false);
+        }
+
+        void lowerCaseValue(String s) {
+            put(VALUE);
+            utf8(s, true);
+        }
+
+        String finish() {
+            digest.update(buf, 0, pos);
+            pos = 0;
+            // digest() resets the digest for the next key
+            return ENCODER.encodeToString(Arrays.copyOf(digest.digest(), 16));
+        }
+
+        private void utf8(String s, boolean lowerCase) {
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    put((byte) (lowerCase && c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c));
+                } else if (c < 0x800) {
+                    put((byte) (0xC0 | c >> 6));
+                    put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    put((byte) (0xF0 | cp >> 18));
+                    put((byte) (0x80 | cp >> 12 & 0x3F));
+                    put((byte) (0x80 | cp >> 6 & 0x3F));
+                    put((byte) (0x80 | cp & 0x3F));
+                } else {
+                    put((byte) (0xE0 | c >> 12));
+                    put((byte) (0x80 | c >> 6 & 0x3F));
+                    put((byte) (0x80 | c & 0x3F));
+                }
+            }
+        }
+
+        private void put(byte b) {
+            if (pos == buf.length) {
+                digest.update(buf, 0, pos);
+                pos = 0;
+            }
+            buf[pos++] = b;
+        }
+    }
+}
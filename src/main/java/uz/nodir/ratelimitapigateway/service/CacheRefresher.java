@@ -0,0 +1,156 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:3:55 PM
+ * <p>
+ * Re-fetches stale entries in the background for stale-while-revalidate. The refresh goes
+ * straight to the route's URI, so it neither consumes the caller's rate limit nor holds up
+ * the caller's response; at most one refresh per key runs on a node.
+ * <p>
+ * Headers go through the gateway's {@link HttpHeadersFilter}s as on a routed request, so
+ * hop-by-hop headers are neither sent nor stored, and the caller's conditional headers are
+ * dropped so the upstream answers with a full body. The refresh takes the route's response
+ * timeout, or the gateway's, or {@link #DEFAULT_TIMEOUT}.
+ * <p>
+ * The target is the route's URI plus the request's own path and query: route filters do not
+ * run, so a route that rewrites the path (StripPrefix, RewritePath, SetPath, PrefixPath) must
+ * not enable {@code staleWhileRevalidateSeconds}, or it refreshes the wrong resource.
+ */
+
+@Slf4j
+@Component
+public class CacheRefresher {
+
+    // a refresh holds its key until it ends, so it must end even when no timeout is configured
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private static final List<String> CONDITIONAL_HEADERS = List.of(HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_MATCH, HttpHeaders.IF_UNMODIFIED_SINCE,
+            HttpHeaders.IF_RANGE, HttpHeaders.RANGE);
+
+    private final WebClient webClient;
+    private final ResponseCacheStore store;
+    private final GatewayMetrics metrics;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+    private final HttpClientProperties httpClient;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public CacheRefresher(WebClient.Builder webClientBuilder, ResponseCacheStore store, GatewayMetrics metrics,
+                          ObjectProvider<List<HttpHeadersFilter>> headersFilters, HttpClientProperties httpClient) {
+        this.webClient = webClientBuilder.build();
+        this.store = store;
+        this.metrics = metrics;
+        this.headersFilters = headersFilters;
+        this.httpClient = httpClient;
+    }
+
+    public void refresh(ServerWebExchange exchange, ResponseCacheProperty cfg, CacheKeyBuilder keys, String cacheKey,
+                        NearCache nearCache) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null || !isHttp(route.getUri())) return;
+        if (!refreshing.add(cacheKey)) return;
+
+        ServerHttpRequest request = exchange.getRequest();
+        URI target = UriComponentsBuilder.fromUri(route.getUri())
+                .replacePath(request.getURI().getRawPath())
+                .replaceQuery(request.getURI().getRawQuery())
+                .build(true)
+                .toUri();
+
+        List<HttpHeadersFilter> filters = headersFilters.getIfAvailable(List::of);
+        HttpHeaders requestHeaders = HttpHeadersFilter.filterRequest(filters, exchange);
+
+        webClient.get()
+                .uri(target)
+                .headers(h -> {
+                    h.addAll(requestHeaders);
+                    h.remove(HttpHeaders.HOST);
+                    h.remove(HttpHeaders.CACHE_CONTROL);
+                    CONDITIONAL_HEADERS.forEach(h::remove);
+                })
+                .exchangeToMono(response -> {
+                    int status = response.statusCode().value();
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.putAll(HttpHeadersFilter.filter(filters, response.headers().asHttpHeaders(), exchange,
+                            HttpHeadersFilter.Type.RESPONSE));
+                    if (!ResponseCacheStore.isCacheable(cfg, status, headers) || !keys.covers(headers)) {
+                        return response.releaseBody().thenReturn(false);
+                    }
+                    return ResponseCacheGatewayFilterFactory.DataBufferUtilsEx.aggregate(
+                                    response.bodyToFlux(DataBuffer.class), cfg.getMaxBytes(),
+                                    agg -> {
+                                        List<String> tags = CacheTags.tags(cfg, request, headers);
+                                        long now = System.currentTimeMillis();
+                                        long freshUntil = now + cfg.getTtlSeconds() * 1000;
+                                        byte[] record;
+                                        try {
+                                            CacheValidation.addValidators(headers, agg.chunks, now);
+                                            long start = System.nanoTime();
+                                            record = CacheCompression.shouldCompress(cfg, headers, agg.size)
+                                                    ? CacheEntryCodec.encode(status, CacheCompression.compressedHeaders(headers),
+                                                    CacheCompression.gzip(agg.chunks, agg.size, cfg.getCompressionLevel()),
+                                                    now, freshUntil)
+                                                    : CacheEntryCodec.encode(status, headers, agg.chunks, agg.size,
+                                                    now, freshUntil);
+                                            metrics.serialization("encode", start);
+                                        } finally {
+                                            agg.chunks.forEach(DataBufferUtils::release);
+                                        }
+                                        return store.save(cfg, nearCache, cacheKey, record, CacheValidation.validator(headers, freshUntil), tags)
+                                                .then();
+                                    },
+                                    tooLarge -> tooLarge.doOnNext(DataBufferUtils::release).then())
+                            .thenReturn(true);
+                })
+                .timeout(timeout(route))
+                .doOnNext(ok -> log.debug("Cache refresh {} stored={}", cacheKey, ok))
+                .doOnError(err -> log.warn("Cache refresh error {}: {}", cacheKey, err.toString()))
+                .doFinally(s -> refreshing.remove(cacheKey))
+                .subscribe(ok -> {
+                }, err -> {
+                });
+    }
+
+    /**
+     * Same precedence as the routing filter: the route's {@code response-timeout} metadata (negative
+     * turns it off), then the gateway's http client setting.
+     */
+    Duration timeout(Route route) {
+        Duration timeout = httpClient.getResponseTimeout();
+        if (route.getMetadata().get(RESPONSE_TIMEOUT_ATTR) instanceof Number millis) {
+            timeout = millis.longValue() >= 0 ? Duration.ofMillis(millis.longValue()) : null;
+        }
+        return timeout != null ? timeout : DEFAULT_TIMEOUT;
+    }
+
+    private static boolean isHttp(URI uri) {
+        return "http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+    }
+}
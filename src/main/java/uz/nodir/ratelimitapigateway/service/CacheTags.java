@@ -0,0 +1,67 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:11:50 PM
+ * <p>
+ * Tags a cache entry is indexed by, so it can be purged together with others: {@code route:<id>},
+ * {@code integrator:<id>} (when keyed by integrator), {@code path:<prefix>} for the first
+ * {@code tagPathDepth} path segments, and every tag the upstream sent in {@code tagHeader}.
+ */
+
+public final class CacheTags {
+
+    // a misbehaving upstream must not turn one write into an unbounded number of index updates
+    static final int MAX_TAGS = 32;
+
+    private CacheTags() {
+    }
+
+    /**
+     * Also removes the tag header from the response, it is meant for the gateway only.
+     */
+    public static List<String> tags(ResponseCacheProperty cfg, ServerHttpRequest request, HttpHeaders response) {
+        List<String> tags = new ArrayList<>();
+        tags.add("route:" + (cfg.getRouteId() != null ? cfg.getRouteId() : "default"));
+
+        if (cfg.isKeyByIntegrator()) {
+            String integrator = request.getHeaders().getFirst(CacheKeyBuilder.INTEGRATOR_HEADER);
+            if (integrator != null && !integrator.isBlank()) {
+                tags.add("integrator:" + integrator.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        String path = request.getPath().pathWithinApplication().value();
+        int end = 0;
+        for (int depth = 0; depth < cfg.getTagPathDepth(); depth++) {
+            end = path.indexOf('/', end + 1);
+            if (end < 0) {
+                if (path.length() > 1 && !path.endsWith("/")) tags.add("path:" + path);
+                break;
+            }
+            if (end > 1) tags.add("path:" + path.substring(0, end));
+        }
+
+        if (cfg.getTagHeader() != null) {
+            List<String> values = response.remove(cfg.getTagHeader());
+            if (values != null) {
+                for (String value : values) {
+                    for (String tag : value.split("[,\\s]+")) {
+                        if (!tag.isEmpty() && tags.size() < MAX_TAGS && !tags.contains(tag)) tags.add(tag);
+                    }
+                }
+            }
+        }
+        return tags;
+    }
+}
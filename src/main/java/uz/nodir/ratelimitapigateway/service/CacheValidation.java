@@ -0,0 +1,129 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import uz.nodir.ratelimitapigateway.model.dto.CacheValidator;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:9:10 PM
+ * <p>
+ * ETag / Last-Modified of cached responses and evaluation of If-None-Match / If-Modified-Since.
+ */
+
+public final class CacheValidation {
+
+    private static final String GZIP_SUFFIX = "-gz";
+
+    private CacheValidation() {
+    }
+
+    /**
+     * Adds an ETag (hash of the body) and a Last-Modified unless the upstream already sent them.
+     * Runs on the identity body; the gzip form is tagged with {@link #gzipTag}.
+     */
+    public static void addValidators(HttpHeaders headers, List<? extends DataBuffer> chunks, long now) {
+        if (!headers.containsKey(HttpHeaders.ETAG)) headers.setETag(etag(chunks));
+        if (headers.getLastModified() < 0) headers.setLastModified(now);
+    }
+
+    public static CacheValidator validator(HttpHeaders headers, long freshUntil) {
+        return new CacheValidator(identityTag(headers.getFirst(HttpHeaders.ETAG)), headers.getLastModified(), freshUntil);
+    }
+
+    /**
+     * The tag of the gzip form the gateway makes of a body tagged {@code etag}: a strong validator
+     * differs between content codings (RFC 9110, 8.8.3). Weak tags are shared by both forms.
+     */
+    public static String gzipTag(String etag) {
+        if (!isStrong(etag) || etag.endsWith(GZIP_SUFFIX + '"')) return etag;
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + '"';
+    }
+
+    /**
+     * The identity form of a tag made by {@link #gzipTag}; other tags are returned as they are.
+     */
+    public static String identityTag(String etag) {
+        if (!isStrong(etag) || !etag.endsWith(GZIP_SUFFIX + '"')) return etag;
+        return etag.substring(0, etag.length() - 1 - GZIP_SUFFIX.length()) + '"';
+    }
+
+    /**
+     * The tag for a 304: the gzip form when that is the one If-None-Match named, so the client
+     * keeps the tag of the body it holds, otherwise the identity form.
+     */
+    public static String notModifiedTag(HttpHeaders request, String etag) {
+        String identity = identityTag(etag);
+        String gzip = gzipTag(identity);
+        if (gzip == null || gzip.equals(identity)) return identity;
+        for (String value : request.getOrEmpty(HttpHeaders.IF_NONE_MATCH)) {
+            for (String candidate : value.split(",")) {
+                if (opaque(gzip).equals(opaque(candidate.trim()))) return gzip;
+            }
+        }
+        return identity;
+    }
+
+    public static boolean isConditional(HttpHeaders request) {
+        return request.containsKey(HttpHeaders.IF_NONE_MATCH) || request.containsKey(HttpHeaders.IF_MODIFIED_SINCE);
+    }
+
+    /**
+     * If-None-Match wins over If-Modified-Since, and uses weak comparison. Either form of the tag,
+     * identity or gzip, matches.
+     */
+    public static boolean notModified(HttpHeaders request, String etag, long lastModified) {
+        List<String> ifNoneMatch = request.getOrEmpty(HttpHeaders.IF_NONE_MATCH);
+        if (!ifNoneMatch.isEmpty()) {
+            if (etag == null) return false;
+            String identity = opaque(identityTag(etag));
+            String gzip = opaque(gzipTag(identityTag(etag)));
+            for (String value : ifNoneMatch) {
+                for (String candidate : value.split(",")) {
+                    String c = candidate.trim();
+                    if ("*".equals(c) || identity.equals(opaque(c)) || gzip.equals(opaque(c))) return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = request.getIfModifiedSince();
+        // HTTP dates have second precision
+        return ifModifiedSince >= 0 && lastModified >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    static String etag(List<? extends DataBuffer> chunks) {
+        MessageDigest digest = sha256();
+        for (DataBuffer chunk : chunks) {
+            try (DataBuffer.ByteBufferIterator it = chunk.readableByteBuffers()) {
+                while (it.hasNext()) digest.update(it.next());
+            }
+        }
+        byte[] hash = Arrays.copyOf(digest.digest(), 16);
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + '"';
+    }
+
+    private static boolean isStrong(String etag) {
+        return etag != null && etag.length() >= 2 && etag.charAt(0) == '"' && etag.endsWith("\"");
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
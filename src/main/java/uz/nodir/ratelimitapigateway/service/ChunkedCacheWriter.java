@@ -0,0 +1,104 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:12:40 AM
+ * <p>
+ * Stores a body that is too large to buffer while it streams to the client: bytes are copied
+ * into one chunk-sized array, and every full chunk is written to Redis before the next buffer
+ * is passed on. A request therefore holds about one chunk, whatever the size of the body.
+ * The manifest is produced only when every chunk is stored; past {@code chunkedMaxBytes}, or
+ * after a failed write, the rest of the body just streams through.
+ */
+
+class ChunkedCacheWriter {
+
+    private final ResponseCacheStore store;
+    private final ResponseCacheProperty cfg;
+    private final String cacheKey;
+    private final long storedAt;
+    private final int chunkBytes;
+
+    private byte[] chunk;
+    private int filled;
+    private int chunks;
+    private long total;
+    private boolean abandoned;
+
+    ChunkedCacheWriter(ResponseCacheStore store, ResponseCacheProperty cfg, String cacheKey, long storedAt) {
+        this.store = store;
+        this.cfg = cfg;
+        this.cacheKey = cacheKey;
+        this.storedAt = storedAt;
+        this.chunkBytes = Math.max(1024, cfg.getChunkBytes());
+        this.chunk = new byte[chunkBytes];
+    }
+
+    /**
+     * Copies the buffer without consuming it; completes once the chunks it filled are stored.
+     */
+    Mono<Void> append(DataBuffer buffer) {
+        if (abandoned) return Mono.empty();
+        total += buffer.readableByteCount();
+        if (total > cfg.getChunkedMaxBytes()) {
+            abandon();
+            return Mono.empty();
+        }
+
+        Mono<Void> writes = Mono.empty();
+        try (DataBuffer.ByteBufferIterator it = buffer.readableByteBuffers()) {
+            while (it.hasNext()) {
+                ByteBuffer buf = it.next();
+                while (buf.hasRemaining()) {
+                    int n = Math.min(buf.remaining(), chunkBytes - filled);
+                    buf.get(chunk, filled, n);
+                    filled += n;
+                    if (filled == chunkBytes) {
+                        writes = writes.then(write(chunk));
+                        chunk = new byte[chunkBytes];
+                        filled = 0;
+                    }
+                }
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * Stores the last partial chunk and encodes the manifest; empty if the body was not stored.
+     */
+    Mono<byte[]> finish(int status, HttpHeaders headers, long freshUntil) {
+        Mono<Void> last = !abandoned && filled > 0 ? write(Arrays.copyOf(chunk, filled)) : Mono.empty();
+        chunk = null;
+        return last.then(Mono.fromSupplier(() -> abandoned || chunks == 0
+                ? null
+                : CacheEntryCodec.encodeManifest(status, headers, total, chunks, storedAt, freshUntil)));
+    }
+
+    // chunks queued behind a failed one are not written
+    private Mono<Void> write(byte[] data) {
+        int index = chunks++;
+        return Mono.defer(() -> abandoned
+                        ? Mono.<Boolean>empty()
+                        : store.saveChunk(cfg, ResponseCacheStore.chunkKey(cacheKey, storedAt, index), data))
+                .doOnNext(ok -> {
+                    if (!ok) abandon();
+                })
+                .then();
+    }
+
+    private void abandon() {
+        abandoned = true;
+        chunk = null;
+    }
+}
@@ -0,0 +1,209 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:3:10 AM
+ * <p>
+ * Per-integrator limits kept in Redis and mirrored into a local map, so the limiter looks them
+ * up without a Redis call. The hash {@value #QUOTAS_KEY} maps an integrator to
+ * {@code limit[/windowSeconds]} or to {@code plan:<name>}, and the hash {@value #PLANS_KEY}
+ * maps a plan to {@code limit[/windowSeconds]}.
+ * <p>
+ * Writers publish the changed integrator on {@value #CHANNEL} ({@code plan:<name>} or
+ * {@code *} for a full reload), and every node re-reads just that entry. The whole table is
+ * also re-read every {@link #RELOAD_INTERVAL}, in case a node missed a message.
+ */
+
+@Slf4j
+@Component
+public class DynamicQuotaTable {
+
+    public static final String QUOTAS_KEY = "ratelimit:quotas";
+    public static final String PLANS_KEY = "ratelimit:plans";
+    public static final String CHANNEL = "gateway:quota:changed";
+    private static final String PLAN_PREFIX = "plan:";
+    private static final Duration RELOAD_INTERVAL = Duration.ofMinutes(5);
+
+    private final ReactiveStringRedisTemplate redis;
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+    private Disposable subscription;
+    private Disposable reloader;
+
+    public DynamicQuotaTable(ReactiveStringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * The route's settings with the integrator's own limit, or the route's own settings. The
+     * adjusted copy is made once per integrator and route, later lookups are two map reads.
+     */
+    public JsonRateLimitProperty resolve(String key, JsonRateLimitProperty route) {
+        if (quotas.isEmpty()) return route;
+        Quota quota = quotas.get(key);
+        return quota != null ? quota.applyTo(route) : route;
+    }
+
+    /**
+     * Stores the integrator's limit, or its plan when {@code plan} is set, and tells every node.
+     */
+    public Mono<Long> put(String integrator, int limit, int windowSeconds, String plan) {
+        String key = normalize(integrator);
+        String value = plan != null && !plan.isBlank()
+                ? PLAN_PREFIX + plan.trim()
+                : windowSeconds > 0 ? limit + "/" + windowSeconds : Integer.toString(limit);
+        return redis.opsForHash().put(QUOTAS_KEY, key, value)
+                .then(redis.convertAndSend(CHANNEL, key));
+    }
+
+    public Mono<Long> remove(String integrator) {
+        String key = normalize(integrator);
+        return redis.opsForHash().remove(QUOTAS_KEY, key)
+                .then(redis.convertAndSend(CHANNEL, key));
+    }
+
+    public Map<String, String> snapshot() {
+        Map<String, String> view = new HashMap<>();
+        quotas.forEach((key, quota) -> view.put(key, quota.windowSeconds > 0
+                ? quota.limit + "/" + quota.windowSeconds
+                : Integer.toString(quota.limit)));
+        return view;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscription = RedisChannels.listen(redis, CHANNEL)
+                .concatMap(key -> onChange(key)
+                        .onErrorResume(err -> {
+                            log.warn("Quota update error {}: {}", key, err.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+        reloader = Flux.interval(Duration.ZERO, RELOAD_INTERVAL)
+                .concatMap(tick -> reload()
+                        .onErrorResume(err -> {
+                            log.warn("Quota reload error: {}", Exceptions.unwrapMultiple(err).stream()
+                                    .map(Throwable::toString)
+                                    .distinct()
+                                    .collect(Collectors.joining("; ")));
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    private Mono<Void> onChange(String key) {
+        if ("*".equals(key) || key.startsWith(PLAN_PREFIX)) return reload();
+
+        return redis.<String, String>opsForHash().get(QUOTAS_KEY, key)
+                .flatMap(value -> value.startsWith(PLAN_PREFIX)
+                        ? redis.<String, String>opsForHash().get(PLANS_KEY, value.substring(PLAN_PREFIX.length()))
+                        : Mono.just(value))
+                .doOnNext(value -> update(key, value))
+                .switchIfEmpty(Mono.fromRunnable(() -> quotas.remove(key)))
+                .then();
+    }
+
+    /**
+     * Re-reads both hashes; entries that are gone from Redis are dropped.
+     */
+    private Mono<Void> reload() {
+        Mono<Map<String, String>> plans = redis.<String, String>opsForHash().entries(PLANS_KEY)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+        Mono<Map<String, String>> entries = redis.<String, String>opsForHash().entries(QUOTAS_KEY)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        // both reads fail together when Redis is down; delaying the errors reports them as one
+        return Mono.zipDelayError(plans, entries)
+                .doOnNext(both -> {
+                    Map<String, String> planValues = both.getT1();
+                    Map<String, String> quotaValues = both.getT2();
+                    quotaValues.forEach((key, value) -> update(key, value.startsWith(PLAN_PREFIX)
+                            ? planValues.get(value.substring(PLAN_PREFIX.length()))
+                            : value));
+                    quotas.keySet().removeIf(key -> !quotaValues.containsKey(key));
+                    log.debug("Quota table reloaded: {} integrators, {} plans", quotas.size(), planValues.size());
+                })
+                .then();
+    }
+
+    private void update(String key, String value) {
+        Quota parsed = value != null ? Quota.parse(value) : null;
+        if (parsed == null) {
+            if (value != null) log.warn("Ignoring invalid quota for {}: {}", key, value);
+            quotas.remove(key);
+            return;
+        }
+        Quota current = quotas.get(key);
+        if (current == null || current.limit != parsed.limit || current.windowSeconds != parsed.windowSeconds) {
+            quotas.put(key, parsed);
+        }
+    }
+
+    private static String normalize(String integrator) {
+        return integrator.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (subscription != null) subscription.dispose();
+        if (reloader != null) reloader.dispose();
+    }
+
+    static final class Quota {
+        final int limit;
+        // 0 keeps the route's window
+        final int windowSeconds;
+        private final Map<String, Derived> derived = new ConcurrentHashMap<>();
+
+        Quota(int limit, int windowSeconds) {
+            this.limit = limit;
+            this.windowSeconds = windowSeconds;
+        }
+
+        static Quota parse(String value) {
+            try {
+                int slash = value.indexOf('/');
+                int limit = Integer.parseInt(slash < 0 ? value.trim() : value.substring(0, slash).trim());
+                int window = slash < 0 ? 0 : Integer.parseInt(value.substring(slash + 1).trim());
+                return limit > 0 && window >= 0 ? new Quota(limit, window) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        JsonRateLimitProperty applyTo(JsonRateLimitProperty route) {
+            String routeId = Objects.requireNonNullElse(route.getRouteId(), "");
+            Derived d = derived.get(routeId);
+            // a re-applied route comes with a new property object
+            if (d == null || d.source != route) {
+                d = new Derived(route, route.withLimit(limit, windowSeconds));
+                derived.put(routeId, d);
+            }
+            return d.applied;
+        }
+
+        private record Derived(JsonRateLimitProperty source, JsonRateLimitProperty applied) {
+        }
+    }
+}
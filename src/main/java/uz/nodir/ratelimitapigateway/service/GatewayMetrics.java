@@ -0,0 +1,178 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:7:05 PM
+ * <p>
+ * Meters of the limiter and cache filters. Meters are resolved once per tag combination and
+ * kept, so recording on the request path is a map lookup plus an increment.
+ */
+
+@Component
+public class GatewayMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<MeterKey, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<RedisKey, Timer> redisTimers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private final DistributionSummary redisBatchSize;
+
+    public GatewayMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.redisBatchSize = DistributionSummary.builder("gateway.redis.batch.size")
+                .description("Commands per pipelined Redis flush")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * HIT, MISS, STALE or BYPASS, as reported in {@code X-Cache}.
+     */
+    public void cacheResult(String routeId, String result) {
+        counters.computeIfAbsent(new MeterKey("gateway.cache.requests", route(routeId), result), k ->
+                Counter.builder(k.name())
+                        .description("Cacheable requests by outcome")
+                        .tag("route", k.route())
+                        .tag("result", k.tag())
+                        .register(registry)).increment();
+    }
+
+    /**
+     * Size of every record written to Redis; its total is the number of bytes cached.
+     */
+    public void cacheStored(String routeId, int bytes) {
+        summaries.computeIfAbsent(new MeterKey("gateway.cache.entry.size", route(routeId), ""), k ->
+                DistributionSummary.builder(k.name())
+                        .description("Size of stored cache records")
+                        .baseUnit("bytes")
+                        .tag("route", k.route())
+                        .publishPercentileHistogram()
+                        .register(registry)).record(bytes);
+    }
+
+    public void aggregation(String routeId, long startNanos) {
+        timer("gateway.cache.aggregation", "route", route(routeId)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time spent in {@link CacheEntryCodec}; {@code operation} is encode or decode.
+     */
+    public void serialization(String operation, long startNanos) {
+        timer("gateway.cache.serialization", "operation", operation).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void limiterDecision(String routeId, RateLimitDecision decision) {
+        String route = route(routeId);
+        counters.computeIfAbsent(new MeterKey("gateway.ratelimit.requests", route, decision.allowed() ? "allowed" : "rejected"), k ->
+                Counter.builder(k.name())
+                        .description("Rate limiter decisions")
+                        .tag("route", k.route())
+                        .tag("result", k.tag())
+                        .register(registry)).increment();
+        summaries.computeIfAbsent(new MeterKey("gateway.ratelimit.remaining", route, ""), k ->
+                DistributionSummary.builder(k.name())
+                        .description("Quota left after each decision")
+                        .tag("route", k.route())
+                        .publishPercentileHistogram()
+                        .register(registry)).record(decision.remaining());
+    }
+
+    /**
+     * Current limit and in-flight requests of a route's {@link AdaptiveConcurrencyLimiter}. A route
+     * whose filter is re-applied reports its new limiter under the same gauges.
+     */
+    public void concurrencyLimiter(String routeId, AdaptiveConcurrencyLimiter limiter) {
+        String route = route(routeId);
+        if (concurrencyLimiters.put(route, limiter) != null) return;
+
+        Gauge.builder("gateway.concurrency.limit", concurrencyLimiters, m -> m.get(route).limit())
+                .description("Adaptive in-flight limit")
+                .tag("route", route)
+                .register(registry);
+        Gauge.builder("gateway.concurrency.inflight", concurrencyLimiters, m -> m.get(route).inFlight())
+                .description("Requests in flight to the upstream")
+                .tag("route", route)
+                .register(registry);
+    }
+
+    public void concurrencyShed(String routeId, int tier) {
+        counters.computeIfAbsent(new MeterKey("gateway.concurrency.shed", route(routeId), Integer.toString(tier)), k ->
+                Counter.builder(k.name())
+                        .description("Requests shed by the adaptive concurrency limit")
+                        .tag("route", k.route())
+                        .tag("tier", k.tag())
+                        .register(registry)).increment();
+    }
+
+    /**
+     * Times a Redis call from subscription to termination, tagged by operation and outcome.
+     */
+    public <T> Mono<T> redis(String operation, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doFinally(signal -> redisTimer(operation, signal)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Commands written to Redis in one {@link RedisBatcher} flush.
+     */
+    public void redisBatch(int commands) {
+        redisBatchSize.record(commands);
+    }
+
+    private Timer redisTimer(String operation, SignalType signal) {
+        String outcome = switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+        return redisTimers.computeIfAbsent(new RedisKey(operation, outcome), k ->
+                Timer.builder("gateway.redis.latency")
+                        .description("Latency of Redis commands issued by the filters")
+                        .tag("operation", k.operation())
+                        .tag("outcome", k.outcome())
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+
+    private Timer timer(String name, String tagKey, String tagValue) {
+        return timers.computeIfAbsent(new TimerKey(name, tagKey, tagValue), k ->
+                Timer.builder(k.name())
+                        .tag(k.tagKey(), k.tagValue())
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+
+    private static String route(String routeId) {
+        return routeId != null ? routeId : "unknown";
+    }
+
+    private record MeterKey(String name, String route, String tag) {
+    }
+
+    private record TimerKey(String name, String tagKey, String tagValue) {
+    }
+
+    private record RedisKey(String operation, String outcome) {
+    }
+}
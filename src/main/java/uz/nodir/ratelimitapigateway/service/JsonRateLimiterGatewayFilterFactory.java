@@ -1,24 +1,30 @@
 package uz.nodir.gateway.filters;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.core.Ordered;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.ErrorBody;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
 import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+import uz.nodir.ratelimitapigateway.service.DynamicQuotaTable;
+import uz.nodir.ratelimitapigateway.service.GatewayMetrics;
+import uz.nodir.ratelimitapigateway.service.RedisRateLimiterEngine;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.*;
 
@@ -28,8 +34,9 @@ public class JsonRateLimiterGatewayFilterFactory
         extends AbstractGatewayFilterFactory<JsonRateLimitProperty>
         implements Ordered {
 
-    private final ReactiveStringRedisTemplate redis;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RedisRateLimiterEngine engine;
+    private final DynamicQuotaTable quotaTable;
+    private final GatewayMetrics metrics;
     private final static String IP_ADDRESS = "X-Real-IP";
 
 
@@ -39,9 +46,12 @@ public class JsonRateLimiterGatewayFilterFactory
     }
 
 
-    public JsonRateLimiterGatewayFilterFactory(ReactiveStringRedisTemplate redis) {
+    public JsonRateLimiterGatewayFilterFactory(RedisRateLimiterEngine engine, DynamicQuotaTable quotaTable,
+                                               GatewayMetrics metrics) {
         super(JsonRateLimitProperty.class);
-        this.redis = redis;
+        this.engine = engine;
+        this.quotaTable = quotaTable;
+        this.metrics = metrics;
     }
 
     @Override
@@ -51,74 +61,61 @@ public class JsonRateLimiterGatewayFilterFactory
 
     @Override
     public GatewayFilter apply(JsonRateLimitProperty property) {
+        Responses responses = new Responses(property);
+        RejectionLog rejections = new RejectionLog(property.getRouteId());
+
         return (exchange, chain) -> {
             var h = exchange.getRequest().getHeaders();
             boolean hasIntegrator = h.getFirst(IP_ADDRESS) != null && !Objects.requireNonNull(h.getFirst(IP_ADDRESS)).isBlank();
 
             if (property.isRequireIntegratorId() && !hasIntegrator) {
-                log.error("Missing {} field in header for request path: {}", IP_ADDRESS, exchange.getRequest().getPath());
-
-                return writeCustom(exchange,
-                        property.getMissingIntegratorStatus(),
-                        property.getMissingIntegratorCode(),
-                        property.getMissingIntegratorMessage());
+                log.debug("Missing {} field in header for request path: {}", IP_ADDRESS, exchange.getRequest().getPath());
+                return responses.writeMissingIntegrator(exchange);
             }
 
             return resolveKey(exchange)
                     .flatMap(key -> {
-                        log.info("Received request from IP: {} by path: {}", key, exchange.getRequest().getPath());
+                        log.debug("Received request from IP: {} by path: {}", key, exchange.getRequest().getPath());
 
                         if (key == null || key.isBlank()) {
-                            return writeJson(
-                                    exchange,
-                                    property.getMissingIntegratorStatus(),
-                                    property.getMissingIntegratorCode(),
-                                    property.getMissingIntegratorMessage(),
-                                    null,
-                                    0);
+                            return responses.writeMissingIntegrator(exchange);
                         }
 
-                        String redisKey = "redisRateLimiter" + ":" + key;
-
-                        return redis
-                                .opsForValue()
-                                .increment(redisKey)
-                                .flatMap(count -> {
-                                    if (count != null && count == 1L) {
-                                        return redis.expire(redisKey, Duration.ofSeconds(property.getWindowSeconds()))
-                                                .thenReturn(count);
-                                    }
-
-                                    return Mono.just(count != null ? count : 0);
-                                })
-                                .flatMap(count -> {
-                                    long used = count == null ? 0 : count;
-                                    long remaining = Math.max(0, property.getLimit() - used);
-                                    log.warn("Remaining limit: {}", remaining);
-
-                                    if (used > property.getLimit()) {
-                                        return redis
-                                                .getExpire(redisKey)
-                                                .switchIfEmpty(Mono.just(Duration.ZERO))
-                                                .flatMap(ttl -> writeJson(
-                                                        exchange,
-                                                        property.getStatusCode(),
-                                                        property.getFailedCode(),
-                                                        property.getFailedMessage(),
-                                                        key,
-                                                        Math.max(0, ttl.getSeconds())));
+                        // integrators with their own quota in Redis, looked up locally
+                        JsonRateLimitProperty effective = quotaTable.resolve(key, property);
+                        return engine
+                                .tryAcquire(key, effective)
+                                .map(decision -> effective == property || decision.limit() >= 0
+                                        ? decision
+                                        : new RateLimitDecision(decision.allowed(), decision.remaining(),
+                                        decision.retryAfterSeconds(), effective.getLimit()))
+                                .flatMap(decision -> {
+                                    log.debug("Remaining limit: {}", decision.remaining());
+                                    metrics.limiterDecision(property.getRouteId(), decision);
+
+                                    if (!decision.allowed()) {
+                                        rejections.record(key);
+                                        return responses.writeRejected(exchange, key, decision);
                                     }
 
+                                    // added on commit so they never end up in a cached response
+                                    ServerHttpResponse response = exchange.getResponse();
+                                    response.beforeCommit(() -> {
+                                        responses.addQuotaHeaders(response.getHeaders(), decision);
+                                        return Mono.empty();
+                                    });
                                     return chain.filter(exchange);
                                 });
                     })
                     .doFinally(
                             s -> {
+                                if (!log.isDebugEnabled()) return;
+
                                 final URI target = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
                                 final Set<URI> originals = exchange.getAttributeOrDefault(GATEWAY_ORIGINAL_REQUEST_URL_ATTR, Collections.emptySet());
                                 final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
 
-                                log.info("GW route={} original={} -> target={} status={}",
+                                log.debug("GW route={} original={} -> target={} status={}",
                                         route != null ? route.getId() : "?",
                                         originals.stream().findFirst().orElse(exchange.getRequest().getURI()),
                                         target,
@@ -130,24 +127,7 @@ public class JsonRateLimiterGatewayFilterFactory
                 ;
     }
 
-    private Mono<Void> writeCustom(ServerWebExchange ex, int status, String code, String message) {
-        var res = ex.getResponse();
-        res.setStatusCode(HttpStatus.valueOf(status));
-        res.getHeaders().setContentType(MediaType.APPLICATION_JSON);
-        var map = new HashMap<String, Object>();
-        map.put("code", code);
-        map.put("message", message);
-        map.put("status", status);
-        byte[] bytes;
-        try {
-            bytes = objectMapper.writeValueAsBytes(map);
-        } catch (Exception e) {
-            bytes = ("{\"code\":\"" + code + "\",\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
-        }
-        return res.writeWith(Mono.just(res.bufferFactory().wrap(bytes)));
-    }
-
-    private Mono<String> resolveKey(ServerWebExchange ex) {
+    Mono<String> resolveKey(ServerWebExchange ex) {
         var cfgAttr = ex.getAttributeOrDefault("rl.precomputedKey", new Object());
         if (cfgAttr instanceof String s && !s.isBlank()) return Mono.just(s);
 
@@ -182,26 +162,96 @@ public class JsonRateLimiterGatewayFilterFactory
     }
 
 
-    private Mono<Void> writeJson(ServerWebExchange ex, int status, String code, String message,
-                                 String key, long retryAfterSeconds) {
-        ServerHttpResponse response = ex.getResponse();
-        response.setStatusCode(HttpStatus.valueOf(status));
-        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("code", code);
-        body.put("message", message);
-        body.put("status", status);
-        if (retryAfterSeconds >= 0) body.put("retryAfterSeconds", retryAfterSeconds);
-        if (key != null) body.put("key", key);
-
-        byte[] bytes;
-        try {
-            bytes = objectMapper.writeValueAsBytes(body);
-        } catch (Exception e) {
-            String fallback = "{\"code\":\"" + code + "\",\"message\":\"" + message + "\"}";
-            bytes = fallback.getBytes(StandardCharsets.UTF_8);
+    /**
+     * Error bodies of one route, rendered once. Only {@code retryAfterSeconds} and {@code key}
+     * are written per rejection.
+     */
+    static class Responses {
+        private static final byte[] RETRY_AFTER_FIELD = ",\"retryAfterSeconds\":".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] KEY_FIELD = ",\"key\":\"".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] END = "\"}".getBytes(StandardCharsets.UTF_8);
+
+        private final HttpStatus rejectedStatus;
+        private final HttpStatus missingIntegratorStatus;
+        private final byte[] rejectedPrefix;
+        private final byte[] missingIntegratorBody;
+        private final String limit;
+
+        Responses(JsonRateLimitProperty property) {
+            this.rejectedStatus = HttpStatus.valueOf(property.getStatusCode());
+            this.missingIntegratorStatus = HttpStatus.valueOf(property.getMissingIntegratorStatus());
+            byte[] rejected = new ErrorBody(property.getFailedCode(), property.getFailedMessage(), property.getStatusCode()).toJson();
+            this.rejectedPrefix = Arrays.copyOf(rejected, rejected.length - 1);
+            this.missingIntegratorBody = new ErrorBody(property.getMissingIntegratorCode(),
+                    property.getMissingIntegratorMessage(), property.getMissingIntegratorStatus()).toJson();
+            this.limit = Integer.toString(property.getLimit());
+        }
+
+        Mono<Void> writeMissingIntegrator(ServerWebExchange ex) {
+            ServerHttpResponse response = ex.getResponse();
+            response.setStatusCode(missingIntegratorStatus);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(missingIntegratorBody)));
+        }
+
+        Mono<Void> writeRejected(ServerWebExchange ex, String key, RateLimitDecision decision) {
+            ServerHttpResponse response = ex.getResponse();
+            response.setStatusCode(rejectedStatus);
+            HttpHeaders headers = response.getHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            addQuotaHeaders(headers, decision);
+            long retryAfter = Math.max(0, decision.retryAfterSeconds());
+            headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+
+            byte[] escapedKey = JsonStringEncoder.getInstance().quoteAsUTF8(key);
+            DataBuffer buffer = response.bufferFactory().allocateBuffer(
+                    rejectedPrefix.length + RETRY_AFTER_FIELD.length + 20 + KEY_FIELD.length + escapedKey.length + END.length);
+            buffer.write(rejectedPrefix);
+            buffer.write(RETRY_AFTER_FIELD);
+            writeDecimal(buffer, retryAfter);
+            buffer.write(KEY_FIELD);
+            buffer.write(escapedKey);
+            buffer.write(END);
+            return response.writeWith(Mono.just(buffer));
+        }
+
+        void addQuotaHeaders(HttpHeaders headers, RateLimitDecision decision) {
+            headers.set("RateLimit-Limit", decision.limit() >= 0 ? Long.toString(decision.limit()) : limit);
+            headers.set("RateLimit-Remaining", Long.toString(Math.max(0, decision.remaining())));
+        }
+
+        private static void writeDecimal(DataBuffer buffer, long value) {
+            long divisor = 1;
+            while (divisor <= value / 10) divisor *= 10;
+            for (; divisor > 0; divisor /= 10) {
+                buffer.write((byte) ('0' + (value / divisor) % 10));
+            }
+        }
+    }
+
+    /**
+     * One WARN line per route and interval summarising rejections, instead of one per request.
+     */
+    static class RejectionLog {
+        private static final long INTERVAL_MILLIS = 10_000;
+
+        private final String routeId;
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong nextReportAt = new AtomicLong();
+
+        RejectionLog(String routeId) {
+            this.routeId = routeId;
+        }
+
+        void record(String key) {
+            long count = rejected.incrementAndGet();
+            long now = System.currentTimeMillis();
+            long next = nextReportAt.get();
+            if (now >= next && nextReportAt.compareAndSet(next, now + INTERVAL_MILLIS)) {
+                log.warn("Rate limit exceeded on route {}: {} rejected requests since last report, last key {}",
+                        routeId, count, key);
+                rejected.addAndGet(-count);
+            }
         }
-        return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
     }
 }
@@ -0,0 +1,191 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:5:10 PM
+ * <p>
+ * Fixed-window limiting with node-local leases: a node reserves {@code leasePercent} of the
+ * limit from the shared Redis counter in one call and spends it from a lock-free local
+ * counter. Grants are atomic against the limit, so the cluster never admits more than
+ * {@code limit} per window; the error is bounded the other way, by permits that sit unused
+ * in other nodes' leases (at most {@code leasePercent} of the limit per node). Unused
+ * permits are given back when a lease expires before its window ends.
+ */
+
+@Slf4j
+@Component
+public class LeasedRateLimiter {
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ACQUIRE = RedisScript.of(new ClassPathResource("scripts/ratelimit/lease_acquire.lua"), List.class);
+    private static final RedisScript<Long> RETURN = RedisScript.of(new ClassPathResource("scripts/ratelimit/lease_return.lua"), Long.class);
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(1);
+
+    private final ReactiveStringRedisTemplate redis;
+    private final RedisBatcher batcher;
+    private final GatewayMetrics metrics;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<String, Mono<Lease>> pending = new ConcurrentHashMap<>();
+    private Disposable sweeper;
+
+    public LeasedRateLimiter(ReactiveStringRedisTemplate redis, RedisBatcher batcher, GatewayMetrics metrics) {
+        this.redis = redis;
+        this.batcher = batcher;
+        this.metrics = metrics;
+    }
+
+    public static long batchSize(JsonRateLimitProperty property) {
+        return (long) Math.floor(property.getLimit() * property.getLeasePercent() / 100.0);
+    }
+
+    public Mono<RateLimitDecision> tryAcquire(String redisKey, JsonRateLimitProperty property) {
+        long now = System.currentTimeMillis();
+        Lease lease = leases.get(redisKey);
+        if (lease != null && now < lease.expiresAt) {
+            if (lease.tryTake()) return Mono.just(lease.allowed());
+            if (lease.granted == 0) return Mono.just(lease.rejected(now));
+        }
+
+        // the lease is spent or expired: take the next one, shared by all requests waiting on this key
+        return pending
+                .computeIfAbsent(redisKey, k -> share(k, property))
+                .flatMap(next -> tryAcquire(redisKey, property));
+    }
+
+    /**
+     * The next lease as one Redis call for every waiter. It leaves {@link #pending} before the
+     * waiters are told, so a waiter that finds it already spent asks for a new one instead of
+     * getting the same completed call back, and recursing, until the stack runs out.
+     */
+    private Mono<Lease> share(String redisKey, JsonRateLimitProperty property) {
+        AtomicReference<Mono<Lease>> self = new AtomicReference<>();
+        Mono<Lease> shared = lease(redisKey, property)
+                .doOnEach(signal -> pending.remove(redisKey, self.get()))
+                .cache();
+        self.set(shared);
+        return shared;
+    }
+
+    private Mono<Lease> lease(String redisKey, JsonRateLimitProperty property) {
+        List<String> args = List.of(
+                Integer.toString(property.getLimit()),
+                Long.toString(property.getWindowSeconds() * 1000L),
+                Long.toString(Math.max(1, batchSize(property))));
+
+        return metrics.redis("limiter.lease_acquire", batcher.evalList(ACQUIRE, List.of(redisKey), args))
+                .map(result -> {
+                    long now = System.currentTimeMillis();
+                    long ttl = ((Number) result.get(3)).longValue();
+                    Lease next = new Lease(
+                            redisKey,
+                            ((Number) result.get(0)).longValue(),
+                            ((Number) result.get(1)).longValue(),
+                            ((Number) result.get(2)).longValue(),
+                            now + ttl,
+                            now + Math.min(ttl, property.getLeaseMaxMillis()));
+                    Lease previous = leases.put(redisKey, next);
+                    if (previous != null) giveBack(previous).subscribe();
+                    return next;
+                });
+    }
+
+    private Mono<Long> giveBack(Lease lease) {
+        long unused = lease.drain();
+        if (unused <= 0 || System.currentTimeMillis() >= lease.windowEndsAt) return Mono.just(0L);
+
+        List<String> args = List.of(Long.toString(unused), Long.toString(lease.windowEnd));
+        return metrics.redis("limiter.lease_return", redis.execute(RETURN, List.of(lease.redisKey), args).next())
+                .doOnNext(n -> log.debug("Returned {} leased permits for {}", n, lease.redisKey))
+                .onErrorResume(err -> {
+                    log.warn("Lease return error {}: {}", lease.redisKey, err.toString());
+                    return Mono.just(0L);
+                });
+    }
+
+    @PostConstruct
+    public void init() {
+        sweeper = Flux.interval(SWEEP_INTERVAL)
+                .flatMap(tick -> sweep())
+                .subscribe();
+    }
+
+    private Flux<Long> sweep() {
+        long now = System.currentTimeMillis();
+        return Flux.fromIterable(leases.values())
+                .filter(lease -> now >= lease.expiresAt && leases.remove(lease.redisKey, lease))
+                .flatMap(this::giveBack);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweeper != null) sweeper.dispose();
+        Flux.fromIterable(leases.values())
+                .flatMap(this::giveBack)
+                .then()
+                .timeout(Duration.ofSeconds(2), Mono.empty())
+                .block();
+    }
+
+    private static final class Lease {
+        final String redisKey;
+        final long granted;
+        final long unleased;
+        final long windowEnd;
+        final long windowEndsAt;
+        final long expiresAt;
+        final AtomicLong permits;
+
+        Lease(String redisKey, long granted, long unleased, long windowEnd, long windowEndsAt, long expiresAt) {
+            this.redisKey = redisKey;
+            this.granted = granted;
+            this.unleased = unleased;
+            this.windowEnd = windowEnd;
+            this.windowEndsAt = windowEndsAt;
+            this.expiresAt = expiresAt;
+            this.permits = new AtomicLong(granted);
+        }
+
+        boolean tryTake() {
+            long p;
+            do {
+                p = permits.get();
+                if (p <= 0) return false;
+            } while (!permits.compareAndSet(p, p - 1));
+            return true;
+        }
+
+        long drain() {
+            return permits.getAndSet(0);
+        }
+
+        RateLimitDecision allowed() {
+            return new RateLimitDecision(true, unleased + Math.max(0, permits.get()), 0);
+        }
+
+        RateLimitDecision rejected(long now) {
+            return new RateLimitDecision(false, 0, Math.max(0, (windowEndsAt - now + 999) / 1000));
+        }
+    }
+}
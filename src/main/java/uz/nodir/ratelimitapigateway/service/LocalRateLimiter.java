@@ -0,0 +1,50 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:6:30 PM
+ * <p>
+ * In-memory fixed-window limiter used on each node while Redis is unavailable.
+ */
+
+@Component
+public class LocalRateLimiter {
+
+    private final Cache<String, Window> windows = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    public RateLimitDecision tryAcquire(String key, long limit, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        long windowMillis = Math.max(1, windowSeconds * 1000L);
+        long start = now - now % windowMillis;
+
+        Window window = windows.asMap().compute(key, (k, w) -> w != null && w.start == start ? w : new Window(start));
+        long used = window.count.incrementAndGet();
+        long retryAfter = (start + windowMillis - now + 999) / 1000;
+
+        return used <= limit
+                ? new RateLimitDecision(true, limit - used, 0)
+                : new RateLimitDecision(false, 0, retryAfter);
+    }
+
+    private static final class Window {
+        final long start;
+        final AtomicLong count = new AtomicLong();
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:11:05 AM
+ * <p>
+ * Per-route in-process L1 tier in front of Redis. Bounded by total bytes and by entry
+ * count at the same time: every entry weighs at least {@code maxBytes / maxEntries}, so
+ * the weight bound also caps the number of entries. Eviction is Caffeine's W-TinyLFU.
+ */
+
+public class NearCache {
+
+    private final Cache<String, byte[]> cache;
+
+    public NearCache(ResponseCacheProperty cfg) {
+        this(cfg, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tests pass a fake ticker and a same-thread executor, so expiry and eviction are deterministic.
+     */
+    NearCache(ResponseCacheProperty cfg, Ticker ticker, Executor executor) {
+        long maxBytes = Math.max(1, cfg.getL1MaxBytes());
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / Math.max(1, cfg.getL1MaxEntries())));
+        long retention = ResponseCacheStore.retentionSeconds(cfg);
+        long ttlSeconds = cfg.getL1TtlSeconds() > 0
+                ? Math.min(cfg.getL1TtlSeconds(), retention)
+                : retention;
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, byte[] value) -> Math.max(minWeight, key.length() + value.length))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .ticker(ticker)
+                .executor(executor)
+                .build();
+    }
+
+    public byte[] get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(String key, byte[] value) {
+        cache.put(key, value);
+    }
+
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+}
@@ -0,0 +1,55 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:3:40 AM
+ * <p>
+ * {@code /actuator/quotas}: GET lists the quotas this node applies, POST with
+ * {@code {"integrator", "limit", "windowSeconds"}} or {@code {"integrator", "plan"}} sets one,
+ * DELETE {@code /actuator/quotas/<integrator>} returns the integrator to the route's limit.
+ * Served on the loopback management port only, never on the gateway port.
+ */
+
+@Component
+@Endpoint(id = "quotas")
+public class QuotaEndpoint {
+
+    private final DynamicQuotaTable table;
+
+    public QuotaEndpoint(DynamicQuotaTable table) {
+        this.table = table;
+    }
+
+    @ReadOperation
+    public Map<String, String> quotas() {
+        return table.snapshot();
+    }
+
+    @WriteOperation
+    public Mono<Map<String, Object>> put(String integrator, @Nullable Integer limit, @Nullable Integer windowSeconds,
+                                         @Nullable String plan) {
+        if ((plan == null || plan.isBlank()) && (limit == null || limit <= 0)) {
+            return Mono.error(new IllegalArgumentException("Either a positive limit or a plan is required"));
+        }
+        return table.put(integrator, limit != null ? limit : 0, windowSeconds != null ? windowSeconds : 0, plan)
+                .thenReturn(Map.of("integrator", integrator, "updated", true));
+    }
+
+    @DeleteOperation
+    public Mono<Map<String, Object>> remove(@Selector String integrator) {
+        return table.remove(integrator).thenReturn(Map.of("integrator", integrator, "removed", true));
+    }
+}
@@ -0,0 +1,194 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.property.RedisBatchProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:10:10 PM
+ * <p>
+ * Pipelines the hot-path reads and scripts of concurrent requests. Commands go to a dedicated
+ * connection with auto-flush off and are written to the socket together: immediately once
+ * {@code maxSize} are queued, otherwise by a flusher thread. The flusher runs right away while
+ * batches stay single commands, so an idle gateway pays only a thread hop; once batches form it
+ * waits up to {@code windowMicros} for more.
+ * <p>
+ * With batching disabled, or against a non-standalone Redis, the same calls go through the
+ * shared templates.
+ */
+
+@Slf4j
+@Component
+public class RedisBatcher {
+
+    private final RedisBatchProperty property;
+    private final LettuceConnectionFactory connectionFactory;
+    private final ReactiveStringRedisTemplate stringRedis;
+    private final ReactiveRedisTemplate<String, byte[]> byteRedis;
+    private final GatewayMetrics metrics;
+
+    private final AtomicReference<Mono<StatefulRedisConnection<byte[], byte[]>>> connection = new AtomicReference<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger lastBatchSize = new AtomicInteger();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean enabled;
+
+    @Autowired
+    public RedisBatcher(RedisBatchProperty property,
+                        LettuceConnectionFactory connectionFactory,
+                        ReactiveStringRedisTemplate stringRedis,
+                        ReactiveRedisTemplate<String, byte[]> byteRedis,
+                        GatewayMetrics metrics) {
+        this(property, connectionFactory, stringRedis, byteRedis, metrics, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-batch-flush");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * With the thread that flushes batches not yet full; tests pass one they run by hand.
+     */
+    RedisBatcher(RedisBatchProperty property,
+                 LettuceConnectionFactory connectionFactory,
+                 ReactiveStringRedisTemplate stringRedis,
+                 ReactiveRedisTemplate<String, byte[]> byteRedis,
+                 GatewayMetrics metrics,
+                 ScheduledExecutorService flusher) {
+        this.property = property;
+        this.flusher = flusher;
+        this.connectionFactory = connectionFactory;
+        this.stringRedis = stringRedis;
+        this.byteRedis = byteRedis;
+        this.metrics = metrics;
+        this.enabled = property.isEnabled()
+                && connectionFactory.getSentinelConfiguration() == null
+                && connectionFactory.getClusterConfiguration() == null;
+        if (property.isEnabled() && !enabled) log.warn("Redis batching needs a standalone Redis, using per-command writes");
+    }
+
+    public Mono<byte[]> get(String key) {
+        if (!enabled) return byteRedis.opsForValue().get(key);
+        return submit(async -> async.get(bytes(key)));
+    }
+
+    /**
+     * Runs a script returning a flat list, by SHA first and by body if Redis does not know it yet.
+     */
+    @SuppressWarnings("rawtypes")
+    public Mono<List> evalList(RedisScript<List> script, List<String> keys, List<String> args) {
+        if (!enabled) return stringRedis.execute(script, keys, args).next();
+
+        byte[][] keyBytes = keys.stream().map(RedisBatcher::bytes).toArray(byte[][]::new);
+        byte[][] argBytes = args.stream().map(RedisBatcher::bytes).toArray(byte[][]::new);
+        Mono<List> bySha = submit(async -> async.evalsha(script.getSha1(), ScriptOutputType.MULTI, keyBytes, argBytes));
+        return bySha.onErrorResume(RedisNoScriptException.class, e ->
+                submit(async -> async.eval(script.getScriptAsString(), ScriptOutputType.MULTI, keyBytes, argBytes)));
+    }
+
+    private <T> Mono<T> submit(Function<RedisAsyncCommands<byte[], byte[]>, RedisFuture<T>> command) {
+        return connection().flatMap(conn -> Mono.defer(() -> {
+            RedisFuture<T> future = command.apply(conn.async());
+            queued(conn);
+            return Mono.fromCompletionStage(future);
+        }));
+    }
+
+    private void queued(StatefulRedisConnection<byte[], byte[]> conn) {
+        int count = pending.incrementAndGet();
+        if (count >= property.getMaxSize()) {
+            flush(conn);
+        } else if (count == 1) {
+            long delay = lastBatchSize.get() > 1 ? property.getWindowMicros() : 0;
+            flusher.schedule(() -> flush(conn), delay, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void flush(StatefulRedisConnection<byte[], byte[]> conn) {
+        int count = pending.getAndSet(0);
+        if (count == 0) return;
+        conn.flushCommands();
+        lastBatchSize.set(count);
+        metrics.redisBatch(count);
+    }
+
+    private Mono<StatefulRedisConnection<byte[], byte[]>> connection() {
+        Mono<StatefulRedisConnection<byte[], byte[]>> current = connection.get();
+        if (current != null) return current;
+
+        // a failed connect is not cached, the next command tries again
+        Mono<StatefulRedisConnection<byte[], byte[]>> connecting = Mono.defer(this::connect)
+                .doOnError(err -> connection.set(null))
+                .cache(conn -> Duration.ofMillis(Long.MAX_VALUE), err -> Duration.ZERO, () -> Duration.ZERO);
+        return connection.compareAndSet(null, connecting) ? connecting : connection.get();
+    }
+
+    private Mono<StatefulRedisConnection<byte[], byte[]>> connect() {
+        AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+        if (!(client instanceof RedisClient redisClient)) {
+            log.warn("Redis batching needs a standalone Redis client, using per-command writes");
+            enabled = false;
+            return Mono.error(new IllegalStateException("Redis batching is not available"));
+        }
+
+        RedisStandaloneConfiguration config = connectionFactory.getStandaloneConfiguration();
+        RedisURI.Builder uri = RedisURI.builder()
+                .withHost(config.getHostName())
+                .withPort(config.getPort())
+                .withDatabase(config.getDatabase())
+                .withSsl(connectionFactory.isUseSsl())
+                .withTimeout(Duration.ofMillis(connectionFactory.getTimeout()));
+        config.getPassword().toOptional().ifPresent(password -> {
+            if (config.getUsername() != null) uri.withAuthentication(config.getUsername(), password);
+            else uri.withPassword(password);
+        });
+
+        return Mono.fromCompletionStage(redisClient.connectAsync(ByteArrayCodec.INSTANCE, uri.build()))
+                .doOnNext(conn -> {
+                    conn.setAutoFlushCommands(false);
+                    log.info("Redis batching connection opened");
+                });
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdownNow();
+        Mono<StatefulRedisConnection<byte[], byte[]>> current = connection.get();
+        if (current != null) current.subscribe(StatefulRedisConnection::closeAsync, err -> {
+        });
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
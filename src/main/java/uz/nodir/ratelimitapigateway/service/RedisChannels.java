@@ -0,0 +1,37 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:17.10.2026
+ * Time:9:10 AM
+ * <p>
+ * Long-lived subscriptions to Redis pub/sub channels. The template connects as soon as
+ * {@code listenToChannel} is called, so the call is deferred: a gateway started while Redis is
+ * down keeps serving and subscribes once Redis is back, instead of failing at startup.
+ */
+
+@Slf4j
+final class RedisChannels {
+
+    private RedisChannels() {
+    }
+
+    /**
+     * Messages of the channel, resubscribing with backoff after every connect or channel error.
+     */
+    static Flux<String> listen(ReactiveStringRedisTemplate redis, String channel) {
+        return Flux.defer(() -> redis.listenToChannel(channel))
+                .doOnSubscribe(s -> log.info("Subscribing to channel {}", channel))
+                .doOnError(err -> log.warn("Channel {} error: {}", channel, err.toString()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .map(message -> message.getMessage());
+    }
+}
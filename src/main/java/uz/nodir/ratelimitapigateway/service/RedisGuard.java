@@ -0,0 +1,56 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:6:20 PM
+ * <p>
+ * Circuit breakers with tight time limits around the Redis calls of the limiter and of the
+ * cache, so a stalled Redis degrades the gateway instead of blocking every request.
+ */
+
+@Slf4j
+@Component
+public class RedisGuard {
+
+    public static final String LIMITER = "redis-limiter";
+    public static final String CACHE = "redis-cache";
+
+    private final ReactiveCircuitBreaker limiter;
+    private final ReactiveCircuitBreaker cache;
+    private final CircuitBreaker cacheState;
+
+    public RedisGuard(ReactiveResilience4JCircuitBreakerFactory factory) {
+        this.limiter = factory.create(LIMITER);
+        this.cache = factory.create(CACHE);
+        for (String id : new String[]{LIMITER, CACHE}) {
+            CircuitBreaker breaker = factory.getCircuitBreakerRegistry().circuitBreaker(id);
+            breaker.getEventPublisher().onStateTransition(event ->
+                    log.warn("Redis circuit breaker {}: {}", id, event.getStateTransition()));
+        }
+        this.cacheState = factory.getCircuitBreakerRegistry().circuitBreaker(CACHE);
+    }
+
+    public boolean isCacheOpen() {
+        CircuitBreaker.State state = cacheState.getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    public <T> Mono<T> limiter(Mono<T> call, Function<Throwable, Mono<T>> fallback) {
+        return limiter.run(call, fallback);
+    }
+
+    public <T> Mono<T> cache(Mono<T> call, Function<Throwable, Mono<T>> fallback) {
+        return cache.run(call, fallback);
+    }
+}
@@ -0,0 +1,176 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+import uz.nodir.ratelimitapigateway.model.enums.RateLimitAlgorithm;
+import uz.nodir.ratelimitapigateway.model.enums.RedisFailurePolicy;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+import uz.nodir.ratelimitapigateway.model.property.QuotaProperty;
+import uz.nodir.ratelimitapigateway.model.property.RedisResilienceProperty;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:10:24 AM
+ * <p>
+ * Runs the whole limiter decision (count, TTL, remaining and retry-after) as a single
+ * Lua script, so every gated request costs exactly one EVALSHA round-trip and a key can
+ * never be left without expiry.
+ */
+
+@Slf4j
+@Component
+public class RedisRateLimiterEngine {
+
+    private static final String KEY_PREFIX = "redisRateLimiter:";
+    private static final String QUOTA_PREFIX = KEY_PREFIX + "q:";
+
+    @SuppressWarnings("rawtypes")
+    private final Map<RateLimitAlgorithm, RedisScript<List>> scripts = new EnumMap<>(RateLimitAlgorithm.class);
+    private final Map<RateLimitAlgorithm, String> operations = new EnumMap<>(RateLimitAlgorithm.class);
+    @SuppressWarnings("rawtypes")
+    private final RedisScript<List> multiQuota = RedisScript.of(new ClassPathResource("scripts/ratelimit/multi_quota.lua"), List.class);
+    private final RedisBatcher redis;
+    private final LeasedRateLimiter leasedRateLimiter;
+    private final LocalRateLimiter localRateLimiter;
+    private final RedisGuard guard;
+    private final RedisResilienceProperty resilience;
+    private final GatewayMetrics metrics;
+
+    public RedisRateLimiterEngine(RedisBatcher redis,
+                                  LeasedRateLimiter leasedRateLimiter,
+                                  LocalRateLimiter localRateLimiter,
+                                  RedisGuard guard,
+                                  RedisResilienceProperty resilience,
+                                  GatewayMetrics metrics) {
+        this.redis = redis;
+        this.leasedRateLimiter = leasedRateLimiter;
+        this.localRateLimiter = localRateLimiter;
+        this.guard = guard;
+        this.resilience = resilience;
+        this.metrics = metrics;
+        for (RateLimitAlgorithm algorithm : RateLimitAlgorithm.values()) {
+            scripts.put(algorithm, RedisScript.of(new ClassPathResource(algorithm.getScript()), List.class));
+            operations.put(algorithm, "limiter." + algorithm.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Decides in Redis; while Redis is slow or down the route's {@link RedisFailurePolicy} decides instead.
+     */
+    public Mono<RateLimitDecision> tryAcquire(String key, JsonRateLimitProperty property) {
+        return guard.limiter(acquire(key, property), err -> Mono.just(degraded(key, property, err)));
+    }
+
+    private Mono<RateLimitDecision> acquire(String key, JsonRateLimitProperty property) {
+        if (!property.getQuotas().isEmpty()) return acquireQuotas(key, property);
+
+        RateLimitAlgorithm algorithm = property.getAlgorithm() != null
+                ? property.getAlgorithm()
+                : RateLimitAlgorithm.FIXED_WINDOW;
+
+        String redisKey = KEY_PREFIX + key + algorithm.getKeySuffix();
+        if (property.isLeasingEnabled()
+                && algorithm == RateLimitAlgorithm.FIXED_WINDOW
+                && LeasedRateLimiter.batchSize(property) > 1) {
+            return leasedRateLimiter.tryAcquire(redisKey, property);
+        }
+
+        List<String> keys = List.of(redisKey);
+        String limit = Integer.toString(property.getLimit());
+        String windowMillis = Long.toString(property.getWindowSeconds() * 1000L);
+        List<String> args = algorithm == RateLimitAlgorithm.SLIDING_WINDOW_LOG
+                ? List.of(limit, windowMillis, Long.toHexString(ThreadLocalRandom.current().nextLong()))
+                : List.of(limit, windowMillis);
+
+        return metrics.redis(operations.get(algorithm), redis.evalList(scripts.get(algorithm), keys, args))
+                .map(RedisRateLimiterEngine::toDecision);
+    }
+
+    /**
+     * All quotas of the route in one script call; counted only if every one of them admits the request.
+     */
+    private Mono<RateLimitDecision> acquireQuotas(String key, JsonRateLimitProperty property) {
+        List<QuotaProperty> quotas = property.getQuotas();
+        List<String> keys = new ArrayList<>(quotas.size());
+        List<String> args = new ArrayList<>(quotas.size() * 2);
+        for (QuotaProperty quota : quotas) {
+            keys.add(quotaKey(quota, property.getRouteId(), key));
+            args.add(Integer.toString(quota.getLimit()));
+            args.add(Long.toString(quota.getWindowSeconds() * 1000L));
+        }
+
+        return metrics.redis("limiter.multi_quota", redis.evalList(multiQuota, keys, args))
+                .map(result -> {
+                    RateLimitDecision decision = toDecision(result);
+                    return new RateLimitDecision(decision.allowed(), decision.remaining(), decision.retryAfterSeconds(),
+                            ((Number) result.get(3)).longValue());
+                });
+    }
+
+    static String quotaKey(QuotaProperty quota, String routeId, String key) {
+        String route = routeId != null ? routeId : "default";
+        String scope = switch (quota.getScope()) {
+            case INTEGRATOR_ROUTE -> route + ':' + key;
+            case INTEGRATOR -> "*:" + key;
+            case ROUTE -> route + ":*";
+        };
+        return QUOTA_PREFIX + scope + ':' + quota.getWindowSeconds();
+    }
+
+    private RateLimitDecision degraded(String key, JsonRateLimitProperty property, Throwable err) {
+        RedisFailurePolicy policy = property.getRedisFailurePolicy() != null
+                ? property.getRedisFailurePolicy()
+                : RedisFailurePolicy.LOCAL;
+        log.debug("Limiter Redis call failed ({}), applying {}", err.toString(), policy);
+
+        return switch (policy) {
+            case FAIL_OPEN -> new RateLimitDecision(true, property.getLimit(), 0);
+            case FAIL_CLOSED -> new RateLimitDecision(false, 0, (resilience.getWaitInOpenStateMillis() + 999) / 1000);
+            case LOCAL -> property.getQuotas().isEmpty()
+                    ? localRateLimiter.tryAcquire(key, localLimit(property.getLimit()), property.getWindowSeconds())
+                    : degradedQuotas(key, property);
+        };
+    }
+
+    /**
+     * Quotas checked one by one in memory; unlike the script, quotas before a rejecting one stay counted.
+     */
+    private RateLimitDecision degradedQuotas(String key, JsonRateLimitProperty property) {
+        RateLimitDecision tightest = null;
+        for (QuotaProperty quota : property.getQuotas()) {
+            long limit = localLimit(quota.getLimit());
+            RateLimitDecision decision = localRateLimiter.tryAcquire(
+                    quotaKey(quota, property.getRouteId(), key), limit, quota.getWindowSeconds());
+            if (!decision.allowed()) return new RateLimitDecision(false, 0, decision.retryAfterSeconds(), limit);
+            if (tightest == null || decision.remaining() < tightest.remaining()) {
+                tightest = new RateLimitDecision(true, decision.remaining(), 0, limit);
+            }
+        }
+        return tightest;
+    }
+
+    private long localLimit(long limit) {
+        return Math.max(1, limit / Math.max(1, resilience.getNodeCount()));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static RateLimitDecision toDecision(List result) {
+        boolean allowed = ((Number) result.get(0)).longValue() == 1L;
+        long remaining = ((Number) result.get(1)).longValue();
+        long retryAfterMillis = ((Number) result.get(2)).longValue();
+        return new RateLimitDecision(allowed, remaining, (retryAfterMillis + 999) / 1000);
+    }
+}
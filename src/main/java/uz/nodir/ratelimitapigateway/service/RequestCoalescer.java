@@ -0,0 +1,111 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:2:15 PM
+ * <p>
+ * Single-flight for cache misses: the first request for a key on this node becomes the
+ * leader and goes upstream, concurrent requests for the same key wait for the record the
+ * leader stores. Across nodes the leaders can additionally agree through a short Redis lock.
+ */
+
+@Slf4j
+@Component
+public class RequestCoalescer {
+
+    private static final String LOCK_PREFIX = "cache-lock:";
+    private static final RedisScript<Long> UNLOCK = RedisScript.of(new ClassPathResource("scripts/cache/unlock.lua"), Long.class);
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final ReactiveRedisTemplate<String, byte[]> redis;
+    private final RedisGuard guard;
+    private final GatewayMetrics metrics;
+    private final byte[] owner = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+
+    public RequestCoalescer(ReactiveRedisTemplate<String, byte[]> redis, RedisGuard guard, GatewayMetrics metrics) {
+        this.redis = redis;
+        this.guard = guard;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Joins the flight for the key, starting a new one if there is none.
+     */
+    public Flight join(String key) {
+        return inFlight.computeIfAbsent(key, Flight::new);
+    }
+
+    public Mono<Boolean> tryLock(String key, long ttlMillis) {
+        return guard.cache(
+                metrics.redis("cache.lock", redis.opsForValue().setIfAbsent(LOCK_PREFIX + key, owner, Duration.ofMillis(ttlMillis))),
+                err -> {
+                    log.debug("Coalescing lock error {}: {}", key, err.toString());
+                    return Mono.just(true);
+                });
+    }
+
+    public Mono<Void> unlock(String key) {
+        return guard.cache(metrics.redis("cache.unlock", redis.execute(UNLOCK, List.of(LOCK_PREFIX + key), List.of(owner)).then()),
+                err -> Mono.empty());
+    }
+
+    /**
+     * Polls Redis until the record another node's leader is about to store shows up.
+     */
+    public Mono<byte[]> awaitRemote(String key, long pollMillis, long timeoutMillis, Predicate<byte[]> accept) {
+        return Mono.defer(() -> guard.cache(metrics.redis("cache.poll", redis.opsForValue().get(key)), err -> Mono.empty()))
+                .filter(accept)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(Math.max(1, pollMillis))))
+                .timeout(Duration.ofMillis(timeoutMillis), Mono.empty());
+    }
+
+    public class Flight {
+        private final String key;
+        private final Sinks.One<byte[]> result = Sinks.one();
+        private final AtomicBoolean led = new AtomicBoolean();
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns true for exactly one caller of the flight, which must then {@link #complete} it.
+         */
+        public boolean lead() {
+            return led.compareAndSet(false, true);
+        }
+
+        /**
+         * Completes the flight with the stored record, or with nothing when the leader's
+         * response turned out not to be cacheable. Only the first completion counts.
+         */
+        public void complete(byte[] record) {
+            inFlight.remove(key, this);
+            if (record != null) result.tryEmitValue(record);
+            else result.tryEmitEmpty();
+        }
+
+        public Mono<byte[]> result() {
+            return result.asMono();
+        }
+    }
+}
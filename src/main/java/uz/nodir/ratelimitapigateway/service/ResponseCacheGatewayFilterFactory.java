@@ -1,47 +1,64 @@
 package uz.nodir.ratelimitapigateway.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
 import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.CacheValidator;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+import uz.nodir.ratelimitapigateway.model.enums.CacheFailureMode;
 import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
 
-import java.net.URI;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.*;
 import java.util.function.Function;
 
-import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
-
 @Slf4j
 @Component
 public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<ResponseCacheProperty> implements Ordered {
 
-    private final ReactiveStringRedisTemplate redis;
-    private final ObjectMapper om = new ObjectMapper();
-    private static final TypeReference<Map<String, String>> MAP = new TypeReference<>() {
-    };
-
-    public ResponseCacheGatewayFilterFactory(ReactiveStringRedisTemplate redis) {
+    // sent with a 304 (RFC 9110, 15.4.5), besides ETag and Last-Modified
+    private static final List<String> NOT_MODIFIED_HEADERS =
+            List.of(HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES, HttpHeaders.VARY, HttpHeaders.CONTENT_LOCATION);
+
+    private final ResponseCacheStore store;
+    private final CacheInvalidationBus invalidationBus;
+    private final RequestCoalescer coalescer;
+    private final CacheRefresher refresher;
+    private final RedisGuard guard;
+    private final GatewayMetrics metrics;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCacheStore store,
+                                             CacheInvalidationBus invalidationBus,
+                                             RequestCoalescer coalescer,
+                                             CacheRefresher refresher,
+                                             RedisGuard guard,
+                                             GatewayMetrics metrics) {
         super(ResponseCacheProperty.class);
-        this.redis = redis;
+        this.store = store;
+        this.invalidationBus = invalidationBus;
+        this.coalescer = coalescer;
+        this.refresher = refresher;
+        this.guard = guard;
+        this.metrics = metrics;
     }
 
 
@@ -54,102 +71,346 @@ public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFact
     public GatewayFilter apply(ResponseCacheProperty cfg) {
         log.info("Taken config for caching: {}", cfg);
 
+        CacheKeyBuilder keys = new CacheKeyBuilder(cfg);
+        NearCache nearCache = cfg.isL1Enabled() ? new NearCache(cfg) : null;
+        if (nearCache != null) invalidationBus.register(cfg.getRouteId(), nearCache);
+
         GatewayFilter core = (exchange, chain) -> {
             if (exchange.getRequest().getMethod() != HttpMethod.GET ||
                     "no-cache".equalsIgnoreCase(exchange.getRequest().getHeaders().getCacheControl())) {
                 return chain.filter(exchange);
             }
 
-            String cacheKey = buildKey(exchange, cfg);
-            return redis.opsForValue()
-                    .get(cacheKey)
-                    .map(Optional::of)
-                    .defaultIfEmpty(Optional.empty())
-                    .flatMap(opt -> {
-                        if (opt.isPresent()) {
-                            // HIT
-                            String json = opt.get();
-                            try {
-                                var m = om.readValue(json, MAP);
+            if (cfg.getRedisFailureMode() == CacheFailureMode.BYPASS && guard.isCacheOpen()) {
+                metrics.cacheResult(cfg.getRouteId(), "BYPASS");
+                return chain.filter(exchange);
+            }
 
-                                var res = exchange.getResponse();
-                                log.info("Cached response: {}", json);
+            String cacheKey = keys.build(exchange);
+            HttpHeaders request = exchange.getRequest().getHeaders();
+            if (!CacheValidation.isConditional(request) || (nearCache != null && nearCache.get(cacheKey) != null)) {
+                return serve(exchange, chain, cfg, keys, cacheKey, nearCache);
+            }
 
-                                res.setStatusCode(HttpStatus.valueOf(Integer.parseInt(m.get("status"))));
-                                om.readValue(m.get("headers"), MAP).forEach(res.getHeaders()::addIfAbsent);
-                                if (cfg.isAddCacheHeader()) res.getHeaders().set("X-Cache", "HIT");
-                                byte[] body = Base64.getDecoder().decode(m.get("body"));
-                                return res.writeWith(Mono.just(res.bufferFactory().wrap(body)));
-                            } catch (Exception e) {
-                                return chain.filter(decorate(exchange, cfg, cacheKey));
-                            }
-                        } else {
-                            // MISS
-                            log.info("No cached response");
-                            return chain.filter(decorate(exchange, cfg, cacheKey));
-                        }
-                    });
+            // a revalidation is answered from the validator alone, without reading the body
+            return store.lookupValidator(cacheKey)
+                    .filter(v -> v.isFresh(System.currentTimeMillis())
+                            && CacheValidation.notModified(request, v.etag(), v.lastModified()))
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(v -> v.isPresent()
+                            ? writeNotModified(exchange.getResponse(), cfg, CacheValidation.notModifiedTag(request, v.get().etag()),
+                                    v.get().lastModified(), null)
+                            : serve(exchange, chain, cfg, keys, cacheKey, nearCache));
         };
 
         return new OrderedGatewayFilter(core, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
     }
 
-    private ServerWebExchange decorate(ServerWebExchange exchange, ResponseCacheProperty cfg, String cacheKey) {
+    private Mono<Void> serve(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCacheProperty cfg,
+                             CacheKeyBuilder keys, String cacheKey, NearCache nearCache) {
+        return store.lookup(nearCache, cacheKey)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(opt -> complete(cacheKey, opt.map(this::decode).orElse(null)))
+                .flatMap(opt -> {
+                    CachedResponse entry = opt.orElse(null);
+                    long now = System.currentTimeMillis();
+                    if (entry != null && entry.isFresh(now)) {
+                        // HIT
+                        return writeCached(exchange, exchange.getResponse(), cfg, cacheKey, entry, "HIT");
+                    }
+                    if (entry != null && entry.isWithinStaleWindow(now, cfg.getStaleWhileRevalidateSeconds())) {
+                        // STALE: serve right away, revalidate in the background
+                        refresher.refresh(exchange, cfg, keys, cacheKey, nearCache);
+                        return writeCached(exchange, exchange.getResponse(), cfg, cacheKey, entry, "STALE");
+                    }
+                    // MISS
+                    log.debug("No cached response");
+                    CachedResponse stale = entry != null && entry.isWithinStaleWindow(now, cfg.getStaleIfErrorSeconds())
+                            ? entry
+                            : null;
+                    return miss(exchange, chain, cfg, keys, cacheKey, nearCache, stale);
+                });
+    }
+
+    /**
+     * The entry, or nothing if it is chunked and a chunk is gone: the request then goes upstream
+     * instead of replaying a body that would stop partway.
+     */
+    private Mono<Optional<CachedResponse>> complete(String cacheKey, CachedResponse entry) {
+        if (entry == null || !entry.isChunked()) return Mono.just(Optional.ofNullable(entry));
+        return store.hasChunks(cacheKey, entry)
+                .map(found -> {
+                    if (found) return Optional.of(entry);
+                    log.debug("Cached response {} is missing chunks, treating it as a miss", cacheKey);
+                    return Optional.empty();
+                });
+    }
+
+    private Mono<Void> miss(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCacheProperty cfg,
+                            CacheKeyBuilder keys, String cacheKey, NearCache nearCache, CachedResponse stale) {
+        if (!cfg.isCoalesceEnabled()) {
+            return fetch(exchange, chain, cfg, keys, cacheKey, nearCache, null, stale);
+        }
+
+        RequestCoalescer.Flight flight = coalescer.join(cacheKey);
+        if (!flight.lead()) {
+            // follower: wait for the leader's record, forward on our own if it produces none in time
+            return flight.result()
+                    .map(this::decode)
+                    .map(Optional::of)
+                    .timeout(Duration.ofMillis(cfg.getCoalesceTimeoutMillis()), Mono.just(Optional.empty()))
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(entry -> entry.isPresent()
+                            ? writeCached(exchange, exchange.getResponse(), cfg, cacheKey, entry.get(), "HIT")
+                            : serveStaleOnError(chain.filter(exchange), exchange, cfg, cacheKey, stale));
+        }
+
+        if (!cfg.isCoalesceLockEnabled()) {
+            return fetch(exchange, chain, cfg, keys, cacheKey, nearCache, flight, stale)
+                    .doFinally(s -> flight.complete(null));
+        }
+
+        return coalescer.tryLock(cacheKey, cfg.getCoalesceLockTtlMillis())
+                .flatMap(locked -> {
+                    if (locked) {
+                        return Mono.usingWhen(
+                                Mono.just(cacheKey),
+                                key -> fetch(exchange, chain, cfg, keys, key, nearCache, flight, stale),
+                                coalescer::unlock);
+                    }
+                    // another node is already fetching this key
+                    return coalescer.awaitRemote(cacheKey, cfg.getCoalescePollMillis(), cfg.getCoalesceTimeoutMillis(),
+                                    record -> {
+                                        CachedResponse entry = decode(record);
+                                        return entry != null && entry.isFresh(System.currentTimeMillis());
+                                    })
+                            .map(Optional::of)
+                            .defaultIfEmpty(Optional.empty())
+                            .flatMap(record -> {
+                                CachedResponse entry = record.map(this::decode).orElse(null);
+                                flight.complete(entry != null ? record.get() : null);
+                                if (entry == null) return serveStaleOnError(chain.filter(exchange), exchange, cfg, cacheKey, stale);
+
+                                if (nearCache != null) nearCache.put(cacheKey, record.get());
+                                return writeCached(exchange, exchange.getResponse(), cfg, cacheKey, entry, "HIT");
+                            });
+                })
+                .doFinally(s -> flight.complete(null));
+    }
+
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, ResponseCacheProperty cfg,
+                             CacheKeyBuilder keys, String cacheKey, NearCache nearCache, RequestCoalescer.Flight flight,
+                             CachedResponse stale) {
+        return serveStaleOnError(
+                chain.filter(decorate(exchange, cfg, keys, cacheKey, nearCache, flight, stale)),
+                exchange, cfg, cacheKey, stale);
+    }
+
+    /**
+     * Stale-if-error for failures that never reach the response (connection refused, timeouts).
+     */
+    private Mono<Void> serveStaleOnError(Mono<Void> upstream, ServerWebExchange exchange,
+                                         ResponseCacheProperty cfg, String cacheKey, CachedResponse stale) {
+        if (stale == null) return upstream;
+        return upstream.onErrorResume(err -> {
+            if (exchange.getResponse().isCommitted()) return Mono.error(err);
+            log.warn("Upstream error, serving stale response: {}", err.toString());
+            return writeCached(exchange, exchange.getResponse(), cfg, cacheKey, stale, "STALE");
+        });
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, ServerHttpResponse res, ResponseCacheProperty cfg,
+                                   String cacheKey, CachedResponse entry, String outcome) {
+        log.debug("Cached response: status={} bytes={}", entry.status(), entry.bodyLength());
+
+        HttpHeaders request = exchange.getRequest().getHeaders();
+        String etag = entry.headers().getFirst(HttpHeaders.ETAG);
+        long lastModified = entry.headers().getLastModified();
+        if (CacheValidation.isConditional(request) && entry.isFresh(System.currentTimeMillis())
+                && CacheValidation.notModified(request, etag, lastModified)) {
+            return writeNotModified(res, cfg, CacheValidation.notModifiedTag(request, etag), lastModified, entry.headers());
+        }
+
+        byte[] inflated = null;
+        if (!entry.isChunked() && CacheCompression.isGzip(entry.headers()) && !CacheCompression.acceptsGzip(exchange.getRequest().getHeaders())) {
+            try {
+                inflated = CacheCompression.gunzip(entry);
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+        }
+
+        res.setStatusCode(HttpStatus.valueOf(entry.status()));
+        entry.headers().forEach((name, values) -> {
+            if (!res.getHeaders().containsKey(name)) res.getHeaders().put(name, values);
+        });
+        if (cfg.isAddCacheHeader()) res.getHeaders().set("X-Cache", outcome);
+        metrics.cacheResult(cfg.getRouteId(), outcome);
+
+        if (entry.isChunked()) {
+            return res.writeWith(store.readChunks(cacheKey, entry, cfg.getChunkPrefetch()).map(res.bufferFactory()::wrap));
+        }
+        if (inflated == null) return res.writeWith(Mono.just(entry.body(res.bufferFactory())));
+
+        res.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+        res.getHeaders().setContentLength(inflated.length);
+        if (etag != null) res.getHeaders().set(HttpHeaders.ETAG, CacheValidation.identityTag(etag));
+        return res.writeWith(Mono.just(res.bufferFactory().wrap(inflated)));
+    }
+
+    /**
+     * Bodyless 304. {@code stored} is null when only the validator was read.
+     */
+    private Mono<Void> writeNotModified(ServerHttpResponse res, ResponseCacheProperty cfg, String etag,
+                                        long lastModified, HttpHeaders stored) {
+        res.setStatusCode(HttpStatus.NOT_MODIFIED);
+        HttpHeaders headers = res.getHeaders();
+        if (etag != null) headers.set(HttpHeaders.ETAG, etag);
+        if (lastModified >= 0) headers.setLastModified(lastModified);
+        if (stored != null) {
+            for (String name : NOT_MODIFIED_HEADERS) {
+                List<String> values = stored.get(name);
+                if (values != null) headers.put(name, values);
+            }
+        }
+        if (cfg.isAddCacheHeader()) headers.set("X-Cache", "HIT");
+        metrics.cacheResult(cfg.getRouteId(), "NOT_MODIFIED");
+        return res.setComplete();
+    }
+
+    private CachedResponse decode(byte[] record) {
+        try {
+            long start = System.nanoTime();
+            CachedResponse entry = CacheEntryCodec.decode(record);
+            metrics.serialization("decode", start);
+            return entry;
+        } catch (Exception e) {
+            log.warn("Cache record decode error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private ServerWebExchange decorate(ServerWebExchange exchange, ResponseCacheProperty cfg, CacheKeyBuilder keys,
+                                       String cacheKey, NearCache nearCache, RequestCoalescer.Flight flight,
+                                       CachedResponse stale) {
         var original = exchange.getResponse();
-        log.info("Original response: {}", original);
         var factory = original.bufferFactory();
 
         var decorated = new ServerHttpResponseDecorator(original) {
             @Override
             @NonNull
             public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
-                log.info("Received body: {}", body);
-                Flux<DataBuffer> flux = Flux.from(body);
-
-                return DataBufferUtilsEx.aggregate(flux, cfg.getMaxBytes())
-                        .flatMap(agg -> {
-                            byte[] bytes = agg.bytes;
-
+                long aggregationStart = System.nanoTime();
+                return DataBufferUtilsEx.aggregate(Flux.from(body), cfg.getMaxBytes(),
+                        agg -> {
+                            metrics.aggregation(cfg.getRouteId(), aggregationStart);
                             int st = getStatusCode() != null ? getStatusCode().value() : 200;
-                            var ct = getHeaders().getContentType();
-                            boolean okStatus = !cfg.isOnly200() || st == 200;
-                            boolean okJson = !cfg.isJsonOnly() || (ct != null && MediaType.APPLICATION_JSON.isCompatibleWith(ct));
-
-                            Mono<Void> writeBody = super.writeWith(Mono.just(factory.wrap(bytes)));
-
-                            Mono<Boolean> saveMono = Mono.just(false);
-
-                            if (okStatus && okJson) {
-                                log.info("Status is OK and body is JSON");
-                                try {
-                                    Map<String, String> hs = new HashMap<>();
-                                    getHeaders().forEach((k, v) -> {
-                                        if (!v.isEmpty()) hs.put(k, v.get(0));
-                                    });
-
-                                    Map<String, Object> record = new HashMap<>();
-                                    record.put("status", st);
-                                    record.put("headers", om.writeValueAsString(hs));
-                                    record.put("body", Base64.getEncoder().encodeToString(bytes));
-                                    String json = om.writeValueAsString(record);
-
-                                    saveMono = redis.opsForValue()
-                                            .set(cacheKey, json, Duration.ofSeconds(cfg.getTtlSeconds()))
-                                            .doOnSuccess(ok -> log.debug("Cache set {} ttl={}s", cacheKey, cfg.getTtlSeconds()))
-                                            .doOnError(err -> log.warn("Cache write error {}: {}", cacheKey, err.toString()));
-                                } catch (Exception e) {
-                                    log.warn("Cache pack error: {}", e.getMessage());
-                                }
+
+                            if (stale != null && st >= 500) {
+                                // stale-if-error for an upstream that answered with a server error
+                                log.warn("Upstream answered {}, serving stale response for {}", st, cacheKey);
+                                agg.chunks.forEach(DataBufferUtils::release);
+                                getHeaders().clear();
+                                return writeCached(exchange, getDelegate(), cfg, cacheKey, stale, "STALE");
                             }
 
                             if (cfg.isAddCacheHeader()) getHeaders().set("X-Cache", "MISS");
+                            metrics.cacheResult(cfg.getRouteId(), "MISS");
 
-                            return writeBody
-                                    .then(saveMono)
+                            if (!ResponseCacheStore.isCacheable(cfg, st, getHeaders()) || !keys.covers(getHeaders())) {
+                                return super.writeWith(Flux.fromIterable(agg.chunks));
+                            }
+
+                            log.debug("Status is OK and body is JSON");
+                            List<String> tags = CacheTags.tags(cfg, exchange.getRequest(), getHeaders());
+                            long now = System.currentTimeMillis();
+                            long freshUntil = now + cfg.getTtlSeconds() * 1000;
+                            CacheValidation.addValidators(getHeaders(), agg.chunks, now);
+                            boolean compress = CacheCompression.shouldCompress(cfg, getHeaders(), agg.size);
+                            byte[] record;
+                            int bodyLength = agg.size;
+                            try {
+                                long start = System.nanoTime();
+                                if (compress) {
+                                    byte[] gzipped = CacheCompression.gzip(agg.chunks, agg.size, cfg.getCompressionLevel());
+                                    bodyLength = gzipped.length;
+                                    record = CacheEntryCodec.encode(st, CacheCompression.compressedHeaders(getHeaders()), gzipped,
+                                            now, freshUntil);
+                                } else {
+                                    record = CacheEntryCodec.encode(st, getHeaders(), agg.chunks, agg.size,
+                                            now, freshUntil);
+                                }
+                                metrics.serialization("encode", start);
+                            } catch (Exception e) {
+                                log.warn("Cache pack error: {}", e.getMessage());
+                                return super.writeWith(Flux.fromIterable(agg.chunks));
+                            }
+                            if (flight != null) flight.complete(record);
+
+                            Mono<Void> write;
+                            if (compress && !CacheCompression.acceptsGzip(exchange.getRequest().getHeaders())) {
+                                // the chunks were only read by gzip, send them as they came
+                                CacheCompression.addVary(getHeaders());
+                                write = super.writeWith(Flux.fromIterable(agg.chunks));
+                            } else {
+                                agg.chunks.forEach(DataBufferUtils::release);
+                                if (compress) {
+                                    getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                                    getHeaders().set(HttpHeaders.ETAG, CacheValidation.gzipTag(getHeaders().getFirst(HttpHeaders.ETAG)));
+                                    getHeaders().setContentLength(bodyLength);
+                                    CacheCompression.addVary(getHeaders());
+                                }
+                                write = super.writeWith(Mono.just(
+                                        factory.wrap(ByteBuffer.wrap(record, record.length - bodyLength, bodyLength).slice())));
+                            }
+                            CacheValidator validator = CacheValidation.validator(getHeaders(), freshUntil);
+                            return write
+                                    .then(store.save(cfg, nearCache, cacheKey, record, validator, tags))
                                     .then();
+                        },
+                        tooLarge -> {
+                            int st = getStatusCode() != null ? getStatusCode().value() : 200;
+                            if (!cfg.isChunkedEnabled()
+                                    || !ResponseCacheStore.isCacheable(cfg, st, getHeaders())
+                                    || getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)
+                                    || !keys.covers(getHeaders())) {
+                                log.debug("Response for {} exceeds {} bytes, streaming without caching", cacheKey, cfg.getMaxBytes());
+                                if (cfg.isAddCacheHeader()) getHeaders().set("X-Cache", "BYPASS");
+                                metrics.cacheResult(cfg.getRouteId(), "BYPASS");
+                                return super.writeWith(tooLarge);
+                            }
+                            return writeChunked(tooLarge, st);
                         });
             }
 
+            /**
+             * Streams the body to the client while storing it chunk by chunk. No ETag is added,
+             * the headers are sent before the body is known.
+             */
+            private Mono<Void> writeChunked(Flux<DataBuffer> body, int st) {
+                if (cfg.isAddCacheHeader()) getHeaders().set("X-Cache", "MISS");
+                metrics.cacheResult(cfg.getRouteId(), "MISS");
+
+                List<String> tags = CacheTags.tags(cfg, exchange.getRequest(), getHeaders());
+                long now = System.currentTimeMillis();
+                long freshUntil = now + cfg.getTtlSeconds() * 1000;
+                if (getHeaders().getLastModified() < 0) getHeaders().setLastModified(now);
+                HttpHeaders stored = new HttpHeaders();
+                stored.putAll(getHeaders());
+
+                ChunkedCacheWriter writer = new ChunkedCacheWriter(store, cfg, cacheKey, now);
+                return super.writeWith(body.concatMap(buf -> writer.append(buf).thenReturn(buf)))
+                        .then(Mono.defer(() -> writer.finish(st, stored, freshUntil)))
+                        .flatMap(manifest -> {
+                            if (flight != null) flight.complete(manifest);
+                            return store.save(cfg, nearCache, cacheKey, manifest,
+                                    CacheValidation.validator(stored, freshUntil), tags);
+                        })
+                        .then();
+            }
+
             @Override
             @NonNull
             public Mono<Void> writeAndFlushWith(
@@ -162,55 +423,53 @@ public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFact
         return exchange.mutate().response(decorated).build();
     }
 
-    private String buildKey(ServerWebExchange ex, ResponseCacheProperty cfg) {
-        var req = ex.getRequest();
-        StringBuilder sb = new StringBuilder("cache:");
-        sb.append(req.getMethod()).append('|');
-        sb.append(req.getPath().pathWithinApplication().value()).append('|');
-
-        var params = new TreeMap<>(req.getQueryParams().toSingleValueMap());
-        if (!params.isEmpty()) sb.append(params);
+    static class DataBufferUtilsEx {
 
-        if (cfg.isKeyByIntegrator()) {
-            String integrator = Optional.ofNullable(req.getHeaders().getFirst("X-Integrator-Id"))
-                    .map(String::trim).filter(s -> !s.isEmpty()).orElse("no-int");
-            sb.append("|int=").append(integrator.toLowerCase(Locale.ROOT));
+        /**
+         * Collects the body as the list of chunks it arrived in, without copying them. If the body
+         * fits into {@code maxBytes} it is handed to {@code whenComplete}; as soon as it crosses the
+         * cap the already collected chunks and the rest of the stream are handed, untouched and in
+         * order, to {@code whenTooLarge}.
+         */
+        static Mono<Void> aggregate(Flux<DataBuffer> body, int maxBytes,
+                                    Function<Agg, Mono<Void>> whenComplete,
+                                    Function<Flux<DataBuffer>, Mono<Void>> whenTooLarge) {
+            Agg agg = new Agg(maxBytes);
+            return body
+                    .bufferUntil(agg::overflowsWith)
+                    .switchOnFirst((first, parts) -> {
+                        if (agg.overflowed) {
+                            return whenTooLarge.apply(parts.concatMapIterable(Function.identity()));
+                        }
+                        return parts.next()
+                                .defaultIfEmpty(List.of())
+                                .flatMap(chunks -> whenComplete.apply(agg.complete(chunks)));
+                    })
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .then();
         }
 
-        URI target = ex.getAttribute(GATEWAY_REQUEST_URL_ATTR);
-        if (target != null) sb.append("|t=").append(target.getPath());
-        var cacheType = sb.toString();
-
-        log.info("Response will be cached with type: {}", cacheType);
-        return cacheType;
-    }
+        static class Agg {
+            final int maxBytes;
+            List<DataBuffer> chunks = List.of();
+            int size;
+            boolean overflowed;
 
-    static class DataBufferUtilsEx {
-        static Mono<Agg> aggregate(Flux<DataBuffer> flux, int maxBytes) {
-            DataBufferFactory[] f = new DataBufferFactory[1];
-            return flux.reduce(new Agg(new byte[0], null), (agg, buf) -> {
-                if (agg.factory == null) agg.factory = buf.factory();
-                byte[] chunk = new byte[buf.readableByteCount()];
-                buf.read(chunk);
-                org.springframework.core.io.buffer.DataBufferUtils.release(buf);
-
-                if (agg.bytes.length + chunk.length > maxBytes)
-                    throw new IllegalStateException("Response too large to cache");
-
-                byte[] concat = Arrays.copyOf(agg.bytes, agg.bytes.length + chunk.length);
-                System.arraycopy(chunk, 0, concat, agg.bytes.length, chunk.length);
-                agg.bytes = concat;
-                return agg;
-            });
-        }
+            Agg(int maxBytes) {
+                this.maxBytes = maxBytes;
+            }
 
-        static class Agg {
-            byte[] bytes;
-            DataBufferFactory factory;
+            boolean overflowsWith(DataBuffer buf) {
+                if (!overflowed) {
+                    size += buf.readableByteCount();
+                    overflowed = size > maxBytes;
+                }
+                return overflowed;
+            }
 
-            Agg(byte[] b, DataBufferFactory f) {
-                this.bytes = b;
-                this.factory = f;
+            Agg complete(List<DataBuffer> chunks) {
+                this.chunks = chunks;
+                return this;
             }
         }
     }
@@ -0,0 +1,197 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.CacheValidator;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Author:Nodir
+ * User:smart
+ * Date:16.10.2026
+ * Time:3:40 PM
+ * <p>
+ * Reads and writes encoded cache records through the L1 tier and Redis, and purges them by tag.
+ */
+
+@Slf4j
+@Component
+public class ResponseCacheStore {
+
+    public static final String VALIDATOR_PREFIX = "validator:";
+    public static final String TAG_PREFIX = "cache-tag:";
+    private static final RedisScript<Long> STORE = RedisScript.of(new ClassPathResource("scripts/cache/store.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> PURGE = RedisScript.of(new ClassPathResource("scripts/cache/purge_tag.lua"), List.class);
+    private static final int PURGE_BATCH = 500;
+    // chunks outlive their manifest, so a replay that has just read the manifest finds all of them
+    private static final long CHUNK_TTL_SLACK_MILLIS = 60_000;
+
+    private final ReactiveRedisTemplate<String, byte[]> redis;
+    private final RedisBatcher batcher;
+    private final CacheInvalidationBus invalidationBus;
+    private final RedisGuard guard;
+    private final GatewayMetrics metrics;
+
+    public ResponseCacheStore(ReactiveRedisTemplate<String, byte[]> redis, RedisBatcher batcher,
+                              CacheInvalidationBus invalidationBus, RedisGuard guard, GatewayMetrics metrics) {
+        this.redis = redis;
+        this.batcher = batcher;
+        this.invalidationBus = invalidationBus;
+        this.guard = guard;
+        this.metrics = metrics;
+    }
+
+    /**
+     * L1 first, then Redis. A failed or timed out Redis read is reported as a miss.
+     */
+    public Mono<byte[]> lookup(NearCache nearCache, String cacheKey) {
+        if (nearCache == null) return remoteGet(cacheKey);
+
+        byte[] local = nearCache.get(cacheKey);
+        if (local != null) return Mono.just(local);
+
+        return remoteGet(cacheKey)
+                .doOnNext(record -> nearCache.put(cacheKey, record));
+    }
+
+    private Mono<byte[]> remoteGet(String cacheKey) {
+        return guard.cache(metrics.redis("cache.get", batcher.get(cacheKey)), err -> {
+            log.debug("Cache read failed {}: {}", cacheKey, err.toString());
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * The body of a chunked entry, reading at most {@code prefetch} chunks ahead of the consumer.
+     * Fails if a chunk is gone, e.g. evicted by Redis under memory pressure after
+     * {@link #hasChunks} was checked; the response is then aborted, not completed short.
+     */
+    public Flux<byte[]> readChunks(String cacheKey, CachedResponse manifest, int prefetch) {
+        return Flux.range(0, manifest.chunks())
+                .flatMapSequential(i -> {
+                    String key = chunkKey(cacheKey, manifest.storedAt(), i);
+                    return guard.cache(metrics.redis("cache.get_chunk", batcher.get(key)), err -> Mono.error(err))
+                            .switchIfEmpty(Mono.error(() -> new IllegalStateException("Cache chunk " + key + " is missing")));
+                }, Math.max(1, prefetch), 1);
+    }
+
+    /**
+     * Whether every chunk of the entry is still in Redis. Checked before a replay commits its
+     * headers, so an entry missing a chunk is treated as a miss rather than cut short mid-body.
+     */
+    public Mono<Boolean> hasChunks(String cacheKey, CachedResponse manifest) {
+        List<String> keys = new ArrayList<>(manifest.chunks());
+        for (int i = 0; i < manifest.chunks(); i++) keys.add(chunkKey(cacheKey, manifest.storedAt(), i));
+        return guard.cache(metrics.redis("cache.exists_chunks", redis.countExistingKeys(keys)), err -> Mono.just(0L))
+                .map(found -> found == manifest.chunks());
+    }
+
+    /**
+     * Writes one chunk of a body that is still streaming; false if it could not be stored.
+     */
+    public Mono<Boolean> saveChunk(ResponseCacheProperty cfg, String chunkKey, byte[] chunk) {
+        Duration ttl = Duration.ofMillis(retentionSeconds(cfg) * 1000 + CHUNK_TTL_SLACK_MILLIS);
+        return guard.cache(metrics.redis("cache.set_chunk", redis.opsForValue().set(chunkKey, chunk, ttl)), err -> {
+            log.debug("Cache chunk write error {}: {}", chunkKey, err.toString());
+            return Mono.just(false);
+        });
+    }
+
+    /**
+     * Chunk keys carry the manifest's store time, so a replaced entry never mixes chunks of two bodies.
+     */
+    public static String chunkKey(String cacheKey, long storedAt, int index) {
+        return cacheKey + ':' + Long.toString(storedAt, 36) + ':' + index;
+    }
+
+    /**
+     * Only the validator, for answering conditional requests without reading the body.
+     */
+    public Mono<CacheValidator> lookupValidator(String cacheKey) {
+        Mono<byte[]> read = metrics.redis("cache.get_validator", batcher.get(VALIDATOR_PREFIX + cacheKey));
+        return guard.cache(read, err -> Mono.empty())
+                .flatMap(data -> {
+                    try {
+                        return Mono.just(CacheEntryCodec.decodeValidator(data));
+                    } catch (IOException e) {
+                        log.warn("Cache validator decode error {}: {}", cacheKey, e.getMessage());
+                        return Mono.empty();
+                    }
+                });
+    }
+
+    /**
+     * Stores the record and its validator for the fresh period plus the longest stale window,
+     * indexes it under its tags and tells the other nodes to drop their L1 copy.
+     */
+    public Mono<Boolean> save(ResponseCacheProperty cfg, NearCache nearCache, String cacheKey, byte[] record,
+                              CacheValidator validator, List<String> tags) {
+        if (nearCache != null) nearCache.put(cacheKey, record);
+
+        long retention = retentionSeconds(cfg);
+        metrics.cacheStored(cfg.getRouteId(), record.length);
+        List<byte[]> args = List.of(record, CacheEntryCodec.encodeValidator(validator),
+                Long.toString(retention * 1000).getBytes(StandardCharsets.UTF_8));
+        List<String> keys = new ArrayList<>(2 + tags.size());
+        keys.add(cacheKey);
+        keys.add(VALIDATOR_PREFIX + cacheKey);
+        for (String tag : tags) keys.add(TAG_PREFIX + tag);
+        Mono<Boolean> write = metrics.redis("cache.set",
+                        redis.execute(STORE, keys, args).next().map(n -> n == 1L))
+                .doOnSuccess(ok -> log.debug("Cache set {} ttl={}s", cacheKey, retention));
+        return guard.cache(write, err -> {
+                    log.debug("Cache write error {}: {}", cacheKey, err.toString());
+                    return Mono.just(false);
+                })
+                .flatMap(ok -> ok ? invalidationBus.publish(cacheKey).thenReturn(true) : Mono.just(false));
+    }
+
+    /**
+     * Deletes every record of the tag, {@value #PURGE_BATCH} per script call, and drops them from
+     * the L1 tiers. Takes as many calls as the tag has records, whatever the size of the keyspace.
+     */
+    public Mono<Long> purge(String tag) {
+        String index = TAG_PREFIX + tag;
+        return purgeBatch(index)
+                .expand(keys -> keys.isEmpty() ? Mono.empty() : purgeBatch(index))
+                .concatMap(keys -> invalidationBus.invalidate(keys).thenReturn((long) keys.size()))
+                .reduce(0L, Long::sum)
+                .doOnNext(n -> log.info("Purged {} cache entries tagged {}", n, tag));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<List<String>> purgeBatch(String index) {
+        List<byte[]> args = List.of(Integer.toString(PURGE_BATCH).getBytes(StandardCharsets.UTF_8),
+                VALIDATOR_PREFIX.getBytes(StandardCharsets.UTF_8));
+        return metrics.redis("cache.purge", redis.execute(PURGE, List.of(index), args).next())
+                .map(keys -> ((List<byte[]>) keys).stream()
+                        .map(key -> new String(key, StandardCharsets.UTF_8))
+                        .toList());
+    }
+
+    public static boolean isCacheable(ResponseCacheProperty cfg, int status, HttpHeaders headers) {
+        var ct = headers.getContentType();
+        boolean okStatus = !cfg.isOnly200() || status == 200;
+        boolean okJson = !cfg.isJsonOnly() || (ct != null && MediaType.APPLICATION_JSON.isCompatibleWith(ct));
+        return okStatus && okJson;
+    }
+
+    public static long retentionSeconds(ResponseCacheProperty cfg) {
+        return cfg.getTtlSeconds() + Math.max(cfg.getStaleWhileRevalidateSeconds(), cfg.getStaleIfErrorSeconds());
+    }
+}
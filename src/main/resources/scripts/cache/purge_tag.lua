@@ -0,0 +1,53 @@
+-- Deletes up to ARGV[1] records of a tag, with their validators and, for chunked records, their
+-- chunks, and removes them from the index.
+-- KEYS[1] tag index key
+-- ARGV[1] records per call
+-- ARGV[2] validator key prefix
+-- Returns the record keys removed; empty once the tag is purged
+local DIGITS = '0123456789abcdefghijklmnopqrstuvwxyz'
+
+-- Long.toString(n, 36); epoch millis are exact in a Lua number
+local function base36(n)
+    if n == 0 then
+        return '0'
+    end
+    local s = ''
+    while n > 0 do
+        local d = n % 36
+        s = string.sub(DIGITS, d + 1, d + 1) .. s
+        n = (n - d) / 36
+    end
+    return s
+end
+
+-- chunk keys of a manifest, <key>:<storedAt base 36>:<index>; the record layout is in CacheEntryCodec:
+-- magic 0xCE, version, long storedAt, long freshUntil, int chunk count (since version 3)
+local function deleteChunks(key)
+    local head = redis.call('GETRANGE', key, 0, 21)
+    if #head < 22 or string.byte(head, 1) ~= 0xCE or string.byte(head, 2) < 3 then
+        return
+    end
+    local storedAt = 0
+    for i = 3, 10 do
+        storedAt = storedAt * 256 + string.byte(head, i)
+    end
+    local chunks = 0
+    for i = 19, 22 do
+        chunks = chunks * 256 + string.byte(head, i)
+    end
+    local prefix = key .. ':' .. base36(storedAt) .. ':'
+    for i = 0, chunks - 1 do
+        redis.call('DEL', prefix .. i)
+    end
+end
+
+local keys = redis.call('ZRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)
+if #keys == 0 then
+    return keys
+end
+for _, key in ipairs(keys) do
+    deleteChunks(key)
+    redis.call('DEL', key, ARGV[2] .. key)
+end
+redis.call('ZREM', KEYS[1], unpack(keys))
+return keys
@@ -0,0 +1,25 @@
+-- Writes a cache record and its validator together, so a validator never describes another record,
+-- and adds the record to the index of each of its tags.
+-- KEYS[1] record key
+-- KEYS[2] validator key
+-- KEYS[3..n] tag index keys, sorted sets of record keys scored by expiry
+-- ARGV[1] record
+-- ARGV[2] validator
+-- ARGV[3] ttl, millis
+local ttl = tonumber(ARGV[3])
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ttl)
+redis.call('SET', KEYS[2], ARGV[2], 'PX', ttl)
+
+if #KEYS > 2 then
+    local t = redis.call('TIME')
+    local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+    for i = 3, #KEYS do
+        -- members of expired records are dropped here; the index itself lives as long as its newest record
+        redis.call('ZREMRANGEBYSCORE', KEYS[i], '-inf', now)
+        redis.call('ZADD', KEYS[i], now + ttl, KEYS[1])
+        if redis.call('PTTL', KEYS[i]) < ttl then
+            redis.call('PEXPIRE', KEYS[i], ttl)
+        end
+    end
+end
+return 1
@@ -0,0 +1,20 @@
+-- Fixed window counter.
+-- KEYS[1] counter key
+-- ARGV[1] limit, ARGV[2] window in millis
+-- Returns {allowed, remaining, retryAfterMillis}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+
+local current = redis.call('INCR', KEYS[1])
+local ttl = redis.call('PTTL', KEYS[1])
+if ttl < 0 then
+    -- first hit of the window, or a key left without TTL by an older gateway version
+    redis.call('PEXPIRE', KEYS[1], window)
+    ttl = window
+end
+
+if current > limit then
+    return { 0, 0, ttl }
+end
+return { 1, limit - current, 0 }
@@ -0,0 +1,27 @@
+-- Leases a batch of permits from a fixed window counter to one gateway node.
+-- KEYS[1] counter key (shared with fixed_window.lua)
+-- ARGV[1] limit, ARGV[2] window in millis, ARGV[3] batch size
+-- Returns {granted, unleasedRemaining, windowEndMillis, ttlMillis}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local batch = tonumber(ARGV[3])
+
+local t = redis.call('TIME')
+local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+
+local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+local granted = math.max(0, math.min(batch, limit - used))
+if granted > 0 then
+    used = redis.call('INCRBY', KEYS[1], granted)
+end
+
+local ttl = redis.call('PTTL', KEYS[1])
+if ttl < 0 then
+    if granted > 0 then
+        redis.call('PEXPIRE', KEYS[1], window)
+    end
+    ttl = window
+end
+
+return { granted, math.max(0, limit - used), now + ttl, ttl }
@@ -0,0 +1,23 @@
+-- Gives unused leased permits back to the counter they were taken from.
+-- KEYS[1] counter key
+-- ARGV[1] permits to return, ARGV[2] window end the permits were leased for
+-- Returns the number of permits actually returned
+
+local ttl = redis.call('PTTL', KEYS[1])
+if ttl < 0 then
+    return 0
+end
+
+local t = redis.call('TIME')
+local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+if math.abs(now + ttl - tonumber(ARGV[2])) > 50 then
+    -- the window the permits belong to is already over
+    return 0
+end
+
+local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+local n = math.min(tonumber(ARGV[1]), used)
+if n > 0 then
+    redis.call('DECRBY', KEYS[1], n)
+end
+return n
@@ -0,0 +1,45 @@
+-- Several fixed-window quotas checked and counted in one step.
+-- KEYS[i] counter of quota i
+-- ARGV[2i-1] limit of quota i, ARGV[2i] window of quota i in millis
+-- Nothing is counted unless every quota admits the request, so a rejection needs no rollback.
+-- Returns {allowed, remaining, retryAfterMillis, limit}: remaining and limit of the quota closest to
+-- its limit, or the limit of the rejecting quota that frees up last.
+
+local retry = -1
+local rejectedLimit = 0
+
+for i = 1, #KEYS do
+    local limit = tonumber(ARGV[2 * i - 1])
+    local current = tonumber(redis.call('GET', KEYS[i]) or '0')
+    if current >= limit then
+        local ttl = redis.call('PTTL', KEYS[i])
+        if ttl < 0 then
+            -- a counter left without TTL would reject forever
+            ttl = tonumber(ARGV[2 * i])
+            redis.call('PEXPIRE', KEYS[i], ttl)
+        end
+        if ttl > retry then
+            retry = ttl
+            rejectedLimit = limit
+        end
+    end
+end
+
+if retry >= 0 then
+    return { 0, 0, retry, rejectedLimit }
+end
+
+local remaining = -1
+local tightestLimit = 0
+for i = 1, #KEYS do
+    local limit = tonumber(ARGV[2 * i - 1])
+    local current = redis.call('INCR', KEYS[i])
+    if current == 1 or redis.call('PTTL', KEYS[i]) < 0 then
+        redis.call('PEXPIRE', KEYS[i], ARGV[2 * i])
+    end
+    if remaining < 0 or limit - current < remaining then
+        remaining = limit - current
+        tightestLimit = limit
+    end
+end
+return { 1, remaining, 0, tightestLimit }
@@ -0,0 +1,33 @@
+-- Sliding window counter: current and previous fixed windows kept as hash fields,
+-- the previous one weighted by how much of it still overlaps the sliding window.
+-- KEYS[1] hash key
+-- ARGV[1] limit, ARGV[2] window in millis
+-- Returns {allowed, remaining, retryAfterMillis}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+
+local t = redis.call('TIME')
+local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+
+local idx = math.floor(now / window)
+local elapsed = now - idx * window
+local cur = tonumber(redis.call('HGET', KEYS[1], tostring(idx)) or '0')
+local prev = tonumber(redis.call('HGET', KEYS[1], tostring(idx - 1)) or '0')
+local weighted = prev * (window - elapsed) / window + cur
+
+if weighted + 1 > limit then
+    -- wait until the older window's weighted share has decayed enough to fit one more request
+    local retry
+    if cur + 1 <= limit then
+        retry = math.ceil(window - (limit - cur - 1) * window / prev) - elapsed
+    else
+        retry = window - elapsed + math.ceil(window - (limit - 1) * window / cur)
+    end
+    return { 0, 0, math.max(0, retry) }
+end
+
+redis.call('HINCRBY', KEYS[1], tostring(idx), 1)
+redis.call('HDEL', KEYS[1], tostring(idx - 2))
+redis.call('PEXPIRE', KEYS[1], window * 2)
+return { 1, math.max(0, math.floor(limit - weighted - 1)), 0 }
@@ -0,0 +1,26 @@
+-- Sliding window log: one sorted-set member per admitted request.
+-- KEYS[1] log key
+-- ARGV[1] limit, ARGV[2] window in millis, ARGV[3] unique member id
+-- Returns {allowed, remaining, retryAfterMillis}
+
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+
+local t = redis.call('TIME')
+local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+local count = redis.call('ZCARD', KEYS[1])
+
+if count < limit then
+    redis.call('ZADD', KEYS[1], now, ARGV[3])
+    redis.call('PEXPIRE', KEYS[1], window)
+    return { 1, limit - count - 1, 0 }
+end
+
+local oldest = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+local retry = window
+if oldest[2] then
+    retry = math.max(0, tonumber(oldest[2]) + window - now)
+end
+return { 0, 0, retry }
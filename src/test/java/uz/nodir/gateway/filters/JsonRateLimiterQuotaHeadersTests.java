@@ -0,0 +1,136 @@
+package uz.nodir.gateway.filters;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+import uz.nodir.ratelimitapigateway.service.DynamicQuotaTable;
+import uz.nodir.ratelimitapigateway.service.GatewayMetrics;
+import uz.nodir.ratelimitapigateway.service.RedisRateLimiterEngine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JsonRateLimiterQuotaHeadersTests {
+
+    private final RedisRateLimiterEngine engine = mock(RedisRateLimiterEngine.class);
+    private final DynamicQuotaTable quotaTable = mock(DynamicQuotaTable.class);
+    private final AtomicInteger forwarded = new AtomicInteger();
+
+    @Test
+    void admittedRequestReportsTheTightestQuota() {
+        MockServerWebExchange exchange = run(new RateLimitDecision(true, 2, 0, 3));
+
+        assertThat(forwarded).hasValue(1);
+        assertThat(exchange.getResponse().getHeaders().getFirst("RateLimit-Limit")).isEqualTo("3");
+        assertThat(exchange.getResponse().getHeaders().getFirst("RateLimit-Remaining")).isEqualTo("2");
+    }
+
+    @Test
+    void rejectedRequestReportsTheRejectingQuota() {
+        MockServerWebExchange exchange = run(new RateLimitDecision(false, 0, 2, 5));
+
+        assertThat(forwarded).hasValue(0);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.getFirst("RateLimit-Limit")).isEqualTo("5");
+        assertThat(headers.getFirst("RateLimit-Remaining")).isEqualTo("0");
+        assertThat(headers.getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(exchange.getResponse().getBodyAsString().block()).contains("\"retryAfterSeconds\":2", "\"key\":\"int-1\"");
+    }
+
+    @Test
+    void singleLimitReportsTheRouteLimit() {
+        MockServerWebExchange exchange = run(new RateLimitDecision(true, 99, 0));
+
+        assertThat(exchange.getResponse().getHeaders().getFirst("RateLimit-Limit")).isEqualTo("100");
+        assertThat(exchange.getResponse().getHeaders().getFirst("RateLimit-Remaining")).isEqualTo("99");
+    }
+
+    @Test
+    void routeWithoutStatusesRejectsWith429() {
+        JsonRateLimitProperty property = new JsonRateLimitProperty();
+        property.setRouteId("smartBill");
+        property.setLimit(100);
+        property.setWindowSeconds(60);
+
+        MockServerWebExchange exchange = run(property, new RateLimitDecision(false, 0, 2, 5),
+                MockServerHttpRequest.get("/internal/api/bin").header("X-Real-IP", "int-1"));
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void missingIntegratorGets400ByDefault() {
+        JsonRateLimitProperty property = property();
+        property.setMissingIntegratorStatus(new JsonRateLimitProperty().getMissingIntegratorStatus());
+
+        MockServerWebExchange exchange = run(property, new RateLimitDecision(true, 99, 0),
+                MockServerHttpRequest.get("/internal/api/bin"));
+
+        assertThat(forwarded).hasValue(0);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void rejectedBodyEscapesTheConfiguredMessage() throws Exception {
+        JsonRateLimitProperty property = property();
+        property.setFailedCode("LIMIT");
+        property.setFailedMessage("Too \"many\" requests\\");
+
+        MockServerWebExchange exchange = run(property, new RateLimitDecision(false, 0, 2, 5),
+                MockServerHttpRequest.get("/internal/api/bin").header("X-Real-IP", "int-\"1"));
+
+        JsonNode body = new ObjectMapper().readTree(exchange.getResponse().getBodyAsString().block());
+        assertThat(body.fieldNames()).toIterable().containsExactly("code", "message", "status", "retryAfterSeconds", "key");
+        assertThat(body.get("code").asText()).isEqualTo("LIMIT");
+        assertThat(body.get("message").asText()).isEqualTo("Too \"many\" requests\\");
+        assertThat(body.get("status").asInt()).isEqualTo(429);
+        assertThat(body.get("key").asText()).isEqualTo("int-\"1");
+    }
+
+    private MockServerWebExchange run(RateLimitDecision decision) {
+        return run(property(), decision, MockServerHttpRequest.get("/internal/api/bin").header("X-Real-IP", "int-1"));
+    }
+
+    private MockServerWebExchange run(JsonRateLimitProperty property, RateLimitDecision decision,
+                                      MockServerHttpRequest.BaseBuilder<?> request) {
+        when(quotaTable.resolve(anyString(), any())).thenAnswer(inv -> inv.getArgument(1));
+        when(engine.tryAcquire(anyString(), any())).thenReturn(Mono.just(decision));
+        GatewayFilter filter = new JsonRateLimiterGatewayFilterFactory(engine, quotaTable,
+                new GatewayMetrics(new SimpleMeterRegistry())).apply(property);
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter.filter(exchange, ex -> {
+            forwarded.incrementAndGet();
+            return ex.getResponse().setComplete();
+        }).block();
+        return exchange;
+    }
+
+    private static JsonRateLimitProperty property() {
+        JsonRateLimitProperty property = new JsonRateLimitProperty();
+        property.setRouteId("smartBill");
+        property.setLimit(100);
+        property.setWindowSeconds(60);
+        property.setStatusCode(429);
+        property.setRequireIntegratorId(true);
+        property.setMissingIntegratorStatus(406);
+        property.setFailedCode("TO_MANY_REQUESTS");
+        property.setFailedMessage("Try making a request after some time");
+        return property;
+    }
+}
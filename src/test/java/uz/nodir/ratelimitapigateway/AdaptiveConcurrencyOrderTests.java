@@ -0,0 +1,110 @@
+package uz.nodir.ratelimitapigateway;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The adaptive concurrency filter runs after the rate limiter: a request the limiter rejects
+ * neither takes one of the route's slots nor reaches the limiter's latency samples.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AdaptiveConcurrencyOrderTests {
+
+    private static final String ROUTE = "spring.cloud.gateway.server.webflux.routes[0]";
+
+    // the upstream holds every request until the gate opens
+    private static final Sinks.Empty<Void> GATE = Sinks.empty();
+    private static final AtomicInteger UPSTREAM_CALLS = new AtomicInteger();
+    private static final DisposableServer UPSTREAM = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .handle((request, response) -> {
+                UPSTREAM_CALLS.incrementAndGet();
+                return GATE.asMono().then(response
+                        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .sendString(Mono.just("{\"ok\":true}"))
+                        .then());
+            })
+            .bindNow();
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        // the limiter counts locally, no Redis needed
+        registry.add("spring.data.redis.port", () -> 1);
+        registry.add(ROUTE + ".id", () -> "adaptive");
+        registry.add(ROUTE + ".uri", () -> "http://localhost:" + UPSTREAM.port());
+        registry.add(ROUTE + ".predicates[0]", () -> "Path=/adaptive");
+        registry.add(ROUTE + ".filters[0].name", () -> "JsonRateLimiter");
+        registry.add(ROUTE + ".filters[0].args.limit", () -> 1);
+        registry.add(ROUTE + ".filters[0].args.windowSeconds", () -> 3600);
+        registry.add(ROUTE + ".filters[0].args.redisFailurePolicy", () -> "LOCAL");
+        registry.add(ROUTE + ".filters[1].name", () -> "AdaptiveConcurrency");
+        // a single slot, held by the request the upstream is sitting on
+        registry.add(ROUTE + ".filters[1].args.initialLimit", () -> 1);
+        registry.add(ROUTE + ".filters[1].args.minLimit", () -> 1);
+        registry.add(ROUTE + ".filters[1].args.maxLimit", () -> 1);
+        registry.add(ROUTE + ".filters[1].args.windowSamples", () -> 1);
+        registry.add(ROUTE + ".filters[1].args.windowMillis", () -> 0);
+        registry.add(ROUTE + ".filters[1].args.statusCode", () -> 503);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.disposeNow();
+    }
+
+    @Test
+    void rejectedRequestsNeitherTakeSlotsNorMoveTheLimit() throws Exception {
+        CompletableFuture<HttpStatus> admitted = CompletableFuture.supplyAsync(() ->
+                HttpStatus.valueOf(get().returnResult(String.class).getStatus().value()));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (UPSTREAM_CALLS.get() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat(UPSTREAM_CALLS).hasValue(1);
+        assertThat(gauge("gateway.concurrency.inflight")).isEqualTo(1);
+
+        // over the rate limit while the only slot is taken: 429 from the limiter, not 503 from the shedder
+        for (int i = 0; i < 5; i++) get().expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(registry.find("gateway.concurrency.shed").counter()).isNull();
+        assertThat(gauge("gateway.concurrency.inflight")).isEqualTo(1);
+
+        GATE.tryEmitEmpty();
+        assertThat(admitted.get(5, TimeUnit.SECONDS)).isEqualTo(HttpStatus.OK);
+        assertThat(gauge("gateway.concurrency.inflight")).isZero();
+        assertThat(gauge("gateway.concurrency.limit")).isEqualTo(1);
+        assertThat(UPSTREAM_CALLS).hasValue(1);
+    }
+
+    private WebTestClient.ResponseSpec get() {
+        return client.mutate().responseTimeout(Duration.ofSeconds(10)).build()
+                .get().uri("/adaptive").header("X-Real-IP", "int-1").exchange();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("route", "adaptive").gauge().value();
+    }
+}
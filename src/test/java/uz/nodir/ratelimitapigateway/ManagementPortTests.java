@@ -0,0 +1,58 @@
+package uz.nodir.ratelimitapigateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Actuator endpoints, the cache purge and quota writes among them, answer only on the management
+ * port; the gateway port does not serve them.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.data.redis.port=1")
+class ManagementPortTests {
+
+    @Autowired
+    private WebTestClient client;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @Test
+    void cachePurgeIsNotServedOnTheGatewayPort() {
+        client.post().uri("/actuator/cache")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"tag\":\"route:smartBill\"}")
+                .exchange()
+                .expectStatus().isNotFound();
+        client.get().uri("/actuator/prometheus").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void quotaWritesAreNotServedOnTheGatewayPort() {
+        client.post().uri("/actuator/quotas")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"integrator\":\"int-1\",\"limit\":1000000}")
+                .exchange()
+                .expectStatus().isNotFound();
+        client.delete().uri("/actuator/quotas/int-1").exchange().expectStatus().isNotFound();
+        client.get().uri("/actuator/quotas").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void managementPortServesTheEndpoints() {
+        WebTestClient management = WebTestClient.bindToServer()
+                .baseUrl("http://127.0.0.1:" + managementPort)
+                .build();
+
+        management.get().uri("/actuator").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$._links.cache").exists()
+                .jsonPath("$._links.quotas").exists()
+                .jsonPath("$._links.metrics").exists();
+    }
+}
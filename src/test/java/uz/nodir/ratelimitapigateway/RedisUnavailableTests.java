@@ -0,0 +1,98 @@
+package uz.nodir.ratelimitapigateway;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * The gateway started and serving while nothing listens on the Redis port: each route answers
+ * as its {@code redisFailurePolicy} says, and the cache falls back to its L1 tier.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class RedisUnavailableTests {
+
+    private static final String ROUTES = "spring.cloud.gateway.server.webflux.routes";
+
+    private static final DisposableServer UPSTREAM = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .handle((request, response) -> response
+                    .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                    .sendString(Mono.just("{\"ok\":true}")))
+            .bindNow();
+
+    @Autowired
+    private WebTestClient client;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        // nothing listens there, connections are refused right away
+        registry.add("spring.data.redis.port", () -> 1);
+        route(registry, 0, "local", "LOCAL", 2);
+        route(registry, 1, "open", "FAIL_OPEN", 1);
+        route(registry, 2, "closed", "FAIL_CLOSED", 5);
+
+        String cache = ROUTES + "[1].filters[1]";
+        registry.add(cache + ".name", () -> "ResponseCache");
+        registry.add(cache + ".args.ttlSeconds", () -> 60);
+        registry.add(cache + ".args.maxBytes", () -> 65536);
+        registry.add(cache + ".args.addCacheHeader", () -> true);
+        registry.add(cache + ".args.keyByIntegrator", () -> true);
+        registry.add(cache + ".args.redisFailureMode", () -> "L1_ONLY");
+        registry.add(cache + ".args.l1Enabled", () -> true);
+    }
+
+    private static void route(DynamicPropertyRegistry registry, int index, String id, String policy, int limit) {
+        String route = ROUTES + "[" + index + "]";
+        registry.add(route + ".id", () -> id);
+        registry.add(route + ".uri", () -> "http://localhost:" + UPSTREAM.port());
+        registry.add(route + ".predicates[0]", () -> "Path=/" + id);
+        registry.add(route + ".filters[0].name", () -> "JsonRateLimiter");
+        registry.add(route + ".filters[0].args.limit", () -> limit);
+        registry.add(route + ".filters[0].args.windowSeconds", () -> 3600);
+        registry.add(route + ".filters[0].args.redisFailurePolicy", () -> policy);
+        registry.add(route + ".filters[0].args.statusCode", () -> 429);
+        registry.add(route + ".filters[0].args.requireIntegratorId", () -> true);
+        registry.add(route + ".filters[0].args.missingIntegratorStatus", () -> 406);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.disposeNow();
+    }
+
+    @Test
+    void localPolicyLimitsOnThisNode() {
+        get("/local", "int-local").expectStatus().isOk().expectBody().json("{\"ok\":true}");
+        get("/local", "int-local").expectStatus().isOk();
+        get("/local", "int-local").expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        // the local counters are per integrator too
+        get("/local", "int-other").expectStatus().isOk();
+    }
+
+    @Test
+    void failOpenPolicyAdmitsEverythingAndCachesInL1() {
+        get("/open", "int-open").expectStatus().isOk().expectHeader().valueEquals("X-Cache", "MISS");
+        get("/open", "int-open").expectStatus().isOk().expectHeader().valueEquals("X-Cache", "HIT")
+                .expectBody().json("{\"ok\":true}");
+        get("/open", "int-open").expectStatus().isOk();
+    }
+
+    @Test
+    void failClosedPolicyRejects() {
+        get("/closed", "int-closed").expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private WebTestClient.ResponseSpec get(String path, String integrator) {
+        return client.get().uri(path).header("X-Real-IP", integrator).exchange();
+    }
+}
@@ -0,0 +1,63 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import uz.nodir.ratelimitapigateway.model.property.AdaptiveConcurrencyProperty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uz.nodir.ratelimitapigateway.service.AdaptiveConcurrencyLimiter.Outcome.DROPPED;
+import static uz.nodir.ratelimitapigateway.service.AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+
+class AdaptiveConcurrencyLimiterTests {
+
+    @Test
+    void lowerTiersAreShedFirst() {
+        AdaptiveConcurrencyProperty cfg = config();
+        cfg.setTierHeadroomPercent(50);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(cfg);
+
+        for (int i = 0; i < 10; i++) assertThat(limiter.tryAcquire(1)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+        for (int i = 0; i < 10; i++) assertThat(limiter.tryAcquire(0)).isTrue();
+        assertThat(limiter.tryAcquire(0)).isFalse();
+        assertThat(limiter.inFlight()).isEqualTo(20);
+    }
+
+    @Test
+    void limitFollowsLatencyAndErrors() {
+        AdaptiveConcurrencyProperty cfg = config();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(cfg);
+
+        // saturated at steady latency: grows
+        for (int i = 0; i < 20; i++) window(cfg, limiter, 1_000_000, SUCCESS);
+        int grown = limiter.limit();
+        assertThat(grown).isGreaterThan(20);
+
+        // latency far above the no-load latency: shrinks
+        for (int i = 0; i < 5; i++) window(cfg, limiter, 10_000_000, SUCCESS);
+        int shrunk = limiter.limit();
+        assertThat(shrunk).isLessThan(grown);
+
+        // errors: backs off down to the minimum
+        for (int i = 0; i < 200; i++) window(cfg, limiter, 1_000_000, DROPPED);
+        assertThat(limiter.limit()).isEqualTo(4);
+    }
+
+    /**
+     * Fills the limit and completes every request, as one window.
+     */
+    private static void window(AdaptiveConcurrencyProperty cfg, AdaptiveConcurrencyLimiter limiter, long rttNanos,
+                               AdaptiveConcurrencyLimiter.Outcome outcome) {
+        int slots = 0;
+        while (limiter.tryAcquire(0)) slots++;
+        cfg.setWindowSamples(slots);
+        for (int i = 0; i < slots; i++) limiter.release(rttNanos, outcome);
+    }
+
+    private static AdaptiveConcurrencyProperty config() {
+        AdaptiveConcurrencyProperty cfg = new AdaptiveConcurrencyProperty();
+        cfg.setInitialLimit(20);
+        cfg.setWindowSamples(1);
+        cfg.setWindowMillis(0);
+        return cfg;
+    }
+}
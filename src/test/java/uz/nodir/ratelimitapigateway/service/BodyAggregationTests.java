@@ -0,0 +1,149 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+import uz.nodir.ratelimitapigateway.service.ResponseCacheGatewayFilterFactory.DataBufferUtilsEx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link DataBufferUtilsEx#aggregate}: a body within {@code maxBytes} arrives whole, a larger one
+ * is handed over in order, and no buffer outlives the exchange whatever ends it.
+ */
+class BodyAggregationTests {
+
+    private final NettyDataBufferFactory factory = new NettyDataBufferFactory(new UnpooledByteBufAllocator(false));
+    private final List<NettyDataBuffer> allocated = new ArrayList<>();
+
+    private final AtomicReference<String> complete = new AtomicReference<>();
+    private final AtomicReference<String> tooLarge = new AtomicReference<>();
+    private final List<Integer> tooLargeBuffers = new ArrayList<>();
+
+    @AfterEach
+    void everyBufferIsReleased() {
+        assertThat(allocated).allMatch(buf -> buf.getNativeBuffer().refCnt() == 0, "released");
+    }
+
+    @Test
+    void bodyWithinMaxBytesIsCollectedInOrder() {
+        StepVerifier.create(aggregate(body("ab", "cd", "ef"), 6)).verifyComplete();
+
+        assertThat(complete).hasValue("abcdef/6");
+        assertThat(tooLarge).hasValue(null);
+    }
+
+    @Test
+    void emptyBodyIsCompleteWithNoChunks() {
+        StepVerifier.create(aggregate(Flux.empty(), 6)).verifyComplete();
+
+        assertThat(complete).hasValue("/0");
+        assertThat(tooLarge).hasValue(null);
+    }
+
+    @Test
+    void overflowHandsOverEveryBufferInOrder() {
+        StepVerifier.create(aggregate(body("abc", "def", "ghi", "jkl"), 5)).verifyComplete();
+
+        assertThat(complete).hasValue(null);
+        assertThat(tooLarge).hasValue("abcdefghijkl");
+        assertThat(tooLargeBuffers).containsExactly(3, 3, 3, 3);
+    }
+
+    @Test
+    void firstBufferOverMaxBytesIsHandedOver() {
+        StepVerifier.create(aggregate(body("abcdefgh", "ij"), 5)).verifyComplete();
+
+        assertThat(complete).hasValue(null);
+        assertThat(tooLarge).hasValue("abcdefghij");
+        assertThat(tooLargeBuffers).containsExactly(8, 2);
+    }
+
+    @Test
+    void bufferedChunksAreReleasedOnCancel() {
+        TestPublisher<DataBuffer> body = TestPublisher.create();
+
+        StepVerifier.create(aggregate(body.flux(), 100))
+                .then(() -> body.next(buffer("ab"), buffer("cd")))
+                .thenCancel()
+                .verify();
+
+        assertThat(complete).hasValue(null);
+        assertThat(tooLarge).hasValue(null);
+    }
+
+    @Test
+    void bufferedChunksAreReleasedOnError() {
+        TestPublisher<DataBuffer> body = TestPublisher.create();
+
+        StepVerifier.create(aggregate(body.flux(), 100))
+                .then(() -> body.next(buffer("ab"), buffer("cd")))
+                .then(() -> body.error(new IllegalStateException("upstream reset")))
+                .verifyErrorMessage("upstream reset");
+
+        assertThat(complete).hasValue(null);
+        assertThat(tooLarge).hasValue(null);
+    }
+
+    @Test
+    void errorAfterTheHandOverReachesTheConsumer() {
+        TestPublisher<DataBuffer> body = TestPublisher.create();
+
+        StepVerifier.create(aggregate(body.flux(), 3))
+                .then(() -> body.next(buffer("ab"), buffer("cd"), buffer("ef")))
+                .then(() -> body.error(new IllegalStateException("upstream reset")))
+                .verifyErrorMessage("upstream reset");
+
+        assertThat(tooLargeBuffers).containsExactly(2, 2, 2);
+    }
+
+    /**
+     * Aggregates with callbacks that, like the filter's, own and release what they are given.
+     */
+    private Mono<Void> aggregate(Flux<DataBuffer> body, int maxBytes) {
+        return DataBufferUtilsEx.aggregate(body, maxBytes,
+                agg -> Mono.fromRunnable(() -> complete.set(drain(agg.chunks) + "/" + agg.size)),
+                rest -> {
+                    StringBuilder seen = new StringBuilder();
+                    return rest.doOnNext(buf -> {
+                                tooLargeBuffers.add(buf.readableByteCount());
+                                seen.append(drain(List.of(buf)));
+                            })
+                            .doFinally(signal -> tooLarge.set(seen.toString()))
+                            .then();
+                });
+    }
+
+    private Flux<DataBuffer> body(String... parts) {
+        return Flux.fromArray(parts).map(this::buffer);
+    }
+
+    private DataBuffer buffer(String s) {
+        NettyDataBuffer buffer = factory.wrap(Unpooled.wrappedBuffer(s.getBytes(StandardCharsets.UTF_8)));
+        allocated.add(buffer);
+        return buffer;
+    }
+
+    private static String drain(List<DataBuffer> chunks) {
+        StringBuilder out = new StringBuilder();
+        for (DataBuffer buf : chunks) {
+            out.append(buf.toString(StandardCharsets.UTF_8));
+            DataBufferUtils.release(buf);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.body;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.cacheHeader;
+
+class CacheCompressionTests {
+
+    private static final String LARGE = "{\"items\":[" + "1,".repeat(200) + "1]}";
+
+    @Test
+    void gzipsChunksAndInflatesStoredRecord() throws Exception {
+        var factory = DefaultDataBufferFactory.sharedInstance;
+        byte[] first = "{\"items\":[".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "1,2,3]}".getBytes(StandardCharsets.UTF_8);
+        var chunks = List.of(factory.wrap(first), factory.wrap(second));
+
+        byte[] gzipped = CacheCompression.gzip(chunks, first.length + second.length, 6);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentLength(first.length + second.length);
+        CachedResponse entry = CacheEntryCodec.decode(
+                CacheEntryCodec.encode(200, CacheCompression.compressedHeaders(headers), gzipped, 0L, 1L));
+
+        assertThat(CacheCompression.isGzip(entry.headers())).isTrue();
+        assertThat(entry.headers().containsKey(HttpHeaders.CONTENT_LENGTH)).isFalse();
+        assertThat(new String(CacheCompression.gunzip(entry), StandardCharsets.UTF_8)).isEqualTo("{\"items\":[1,2,3]}");
+        // chunks are still readable after compression
+        assertThat(chunks.get(0).readableByteCount()).isEqualTo(first.length);
+    }
+
+    @Test
+    void parsesAcceptEncoding() {
+        assertThat(accepts("gzip, deflate, br")).isTrue();
+        assertThat(accepts("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(accepts("*")).isTrue();
+        assertThat(accepts("gzip;q=0")).isFalse();
+        assertThat(accepts("identity")).isFalse();
+        assertThat(CacheCompression.acceptsGzip(new HttpHeaders())).isFalse();
+    }
+
+    @Test
+    void gzipFormHasItsOwnStrongETag() {
+        CacheFilterFixture fixture = compressing();
+        ArgumentCaptor<byte[]> record = ArgumentCaptor.forClass(byte[].class);
+
+        MockServerWebExchange gzipMiss = exchange("gzip");
+        fixture.run(fixture.filter(), gzipMiss).block(Duration.ofSeconds(2));
+        verify(fixture.store).save(any(), any(), anyString(), record.capture(), any(), anyList());
+        String gzipTag = etag(gzipMiss);
+        assertThat(gzipMiss.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzipTag).endsWith("-gz\"");
+
+        MockServerWebExchange identityMiss = exchange(null);
+        fixture.run(fixture.filter(), identityMiss).block(Duration.ofSeconds(2));
+        String identityTag = etag(identityMiss);
+        assertThat(identityMiss.getResponse().getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(identityTag).isEqualTo(CacheValidation.identityTag(gzipTag)).isNotEqualTo(gzipTag);
+
+        // hits carry the tag of the form they send
+        when(fixture.store.lookup(any(), anyString())).thenReturn(Mono.just(record.getValue()));
+        MockServerWebExchange gzipHit = exchange("gzip");
+        fixture.run(fixture.filter(), gzipHit).block(Duration.ofSeconds(2));
+        assertThat(cacheHeader(gzipHit)).isEqualTo("HIT");
+        assertThat(etag(gzipHit)).isEqualTo(gzipTag);
+
+        MockServerWebExchange identityHit = exchange(null);
+        fixture.run(fixture.filter(), identityHit).block(Duration.ofSeconds(2));
+        assertThat(cacheHeader(identityHit)).isEqualTo("HIT");
+        assertThat(etag(identityHit)).isEqualTo(identityTag);
+        assertThat(body(identityHit)).isEqualTo(LARGE);
+    }
+
+    @Test
+    void revalidationAnswersWithTheTagTheClientHolds() {
+        CacheFilterFixture fixture = compressing();
+        ArgumentCaptor<byte[]> record = ArgumentCaptor.forClass(byte[].class);
+        MockServerWebExchange miss = exchange("gzip");
+        fixture.run(fixture.filter(), miss).block(Duration.ofSeconds(2));
+        verify(fixture.store).save(any(), any(), anyString(), record.capture(), any(), anyList());
+        when(fixture.store.lookup(any(), anyString())).thenReturn(Mono.just(record.getValue()));
+        String gzipTag = etag(miss);
+
+        MockServerWebExchange gzip = MockServerWebExchange.from(MockServerHttpRequest.get("/bin?inn=1")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, gzipTag));
+        fixture.run(fixture.filter(), gzip).block(Duration.ofSeconds(2));
+        assertThat(gzip.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(etag(gzip)).isEqualTo(gzipTag);
+
+        MockServerWebExchange identity = MockServerWebExchange.from(MockServerHttpRequest.get("/bin?inn=1")
+                .header(HttpHeaders.IF_NONE_MATCH, CacheValidation.identityTag(gzipTag)));
+        fixture.run(fixture.filter(), identity).block(Duration.ofSeconds(2));
+        assertThat(identity.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(etag(identity)).isEqualTo(CacheValidation.identityTag(gzipTag));
+    }
+
+    private static CacheFilterFixture compressing() {
+        CacheFilterFixture fixture = new CacheFilterFixture();
+        fixture.cfg.setCompressionEnabled(true);
+        fixture.cfg.setCompressionMinBytes(0);
+        fixture.upstream = (exchange, call) -> CacheFilterFixture.json(exchange, LARGE);
+        when(fixture.store.lookupValidator(anyString())).thenReturn(Mono.empty());
+        return fixture;
+    }
+
+    private static MockServerWebExchange exchange(String acceptEncoding) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/bin?inn=1");
+        if (acceptEncoding != null) request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        return MockServerWebExchange.from(request);
+    }
+
+    private static String etag(MockServerWebExchange exchange) {
+        return exchange.getResponse().getHeaders().getFirst(HttpHeaders.ETAG);
+    }
+
+    private static boolean accepts(String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT_ENCODING, value);
+        return CacheCompression.acceptsGzip(headers);
+    }
+}
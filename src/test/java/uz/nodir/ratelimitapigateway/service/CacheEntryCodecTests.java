@@ -0,0 +1,59 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheEntryCodecTests {
+
+    @Test
+    void roundTripsBinaryRecord() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", "application/json");
+        headers.add("Set-Cookie", "a=1");
+        headers.add("Set-Cookie", "b=2");
+        byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+
+        CachedResponse entry = CacheEntryCodec.decode(CacheEntryCodec.encode(200, headers, body, 1_000L, 61_000L));
+
+        assertThat(entry.status()).isEqualTo(200);
+        assertThat(entry.storedAt()).isEqualTo(1_000L);
+        assertThat(entry.isFresh(60_999L)).isTrue();
+        assertThat(entry.isFresh(61_000L)).isFalse();
+        assertThat(entry.headers().get("Set-Cookie")).isEqualTo(List.of("a=1", "b=2"));
+        assertThat(entry.body(DefaultDataBufferFactory.sharedInstance).toString(StandardCharsets.UTF_8))
+                .isEqualTo("{\"ok\":true}");
+    }
+
+    @Test
+    void roundTripsChunkManifest() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", "application/json");
+
+        CachedResponse entry = CacheEntryCodec.decode(
+                CacheEntryCodec.encodeManifest(200, headers, 5_000_000L, 77, 1_000L, 61_000L));
+
+        assertThat(entry.isChunked()).isTrue();
+        assertThat(entry.chunks()).isEqualTo(77);
+        assertThat(entry.bodyLength()).isEqualTo(5_000_000);
+        assertThat(entry.headers().getContentType()).hasToString("application/json");
+        assertThat(ResponseCacheStore.chunkKey("cache:r:k", entry.storedAt(), 3)).isEqualTo("cache:r:k:rs:3");
+    }
+
+    @Test
+    void readsLegacyJsonRecord() throws Exception {
+        String legacy = "{\"status\":200,\"headers\":\"{\\\"Content-Type\\\":\\\"application/json\\\"}\",\"body\":\"e30=\"}";
+
+        CachedResponse entry = CacheEntryCodec.decode(legacy.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(entry.status()).isEqualTo(200);
+        assertThat(entry.headers().getFirst("Content-Type")).isEqualTo("application/json");
+        assertThat(entry.body(DefaultDataBufferFactory.sharedInstance).toString(StandardCharsets.UTF_8)).isEqualTo("{}");
+    }
+}
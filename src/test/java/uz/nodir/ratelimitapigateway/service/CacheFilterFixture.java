@@ -0,0 +1,88 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A response cache filter over mocked Redis-side collaborators, in front of an upstream the
+ * test scripts per call.
+ */
+class CacheFilterFixture {
+
+    static final String BODY = "{\"inn\":\"1\"}";
+
+    final ResponseCacheStore store = mock(ResponseCacheStore.class);
+    @SuppressWarnings("unchecked")
+    final ReactiveRedisTemplate<String, byte[]> redis = mock(ReactiveRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    final ReactiveValueOperations<String, byte[]> values = mock(ReactiveValueOperations.class);
+    final RedisGuard guard = mock(RedisGuard.class);
+    final GatewayMetrics metrics = new GatewayMetrics(new SimpleMeterRegistry());
+    final RequestCoalescer coalescer = new RequestCoalescer(redis, guard, metrics);
+    final ResponseCacheProperty cfg = new ResponseCacheProperty();
+    final AtomicInteger upstreamCalls = new AtomicInteger();
+    // answer to the n-th upstream call, counting from 1
+    BiFunction<ServerWebExchange, Integer, Mono<Void>> upstream = (exchange, call) -> json(exchange, BODY);
+
+    CacheFilterFixture() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(guard.cache(any(), any())).thenAnswer(inv -> inv.getArgument(0));
+        when(store.lookup(any(), anyString())).thenReturn(Mono.empty());
+        when(store.save(any(), any(), anyString(), any(), any(), anyList())).thenReturn(Mono.just(true));
+
+        cfg.setRouteId("smartBill");
+        cfg.setTtlSeconds(60);
+        cfg.setMaxBytes(1024 * 1024);
+        cfg.setOnly200(true);
+        cfg.setJsonOnly(true);
+        cfg.setAddCacheHeader(true);
+    }
+
+    GatewayFilter filter() {
+        return new ResponseCacheGatewayFilterFactory(store, mock(CacheInvalidationBus.class), coalescer,
+                mock(CacheRefresher.class), guard, metrics).apply(cfg);
+    }
+
+    Mono<Void> run(GatewayFilter filter, ServerWebExchange exchange) {
+        return filter.filter(exchange, ex -> upstream.apply(ex, upstreamCalls.incrementAndGet()));
+    }
+
+    static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/bin?inn=1"));
+    }
+
+    static Mono<Void> json(ServerWebExchange exchange, String body) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    static String body(MockServerWebExchange exchange) {
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    static String cacheHeader(MockServerWebExchange exchange) {
+        return exchange.getResponse().getHeaders().getFirst("X-Cache");
+    }
+}
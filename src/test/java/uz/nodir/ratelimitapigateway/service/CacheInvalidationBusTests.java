@@ -0,0 +1,100 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveSubscription.ChannelMessage;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link CacheInvalidationBus} over an in-memory channel standing in for Redis pub/sub: a node
+ * ignores its own messages, and an invalidation clears the L1 tier of every peer.
+ */
+class CacheInvalidationBusTests {
+
+    private final Sinks.Many<String> channel = Sinks.many().multicast().directBestEffort();
+
+    @Test
+    void invalidationClearsThePeersL1() {
+        NearCache local = nearCache("k1", "k2", "k3");
+        NearCache peer = nearCache("k1", "k2", "k3");
+        CacheInvalidationBus localBus = bus(local);
+        bus(peer);
+
+        assertThat(localBus.invalidate(List.of("k1", "k2")).block()).isEqualTo(1L);
+
+        assertThat(local.get("k1")).isNull();
+        assertThat(local.get("k2")).isNull();
+        assertThat(peer.get("k1")).isNull();
+        assertThat(peer.get("k2")).isNull();
+        assertThat(local.get("k3")).isNotNull();
+        assertThat(peer.get("k3")).isNotNull();
+    }
+
+    @Test
+    void nodeIgnoresItsOwnMessages() {
+        NearCache local = nearCache("k");
+        NearCache peer = nearCache("k");
+        CacheInvalidationBus localBus = bus(local);
+        bus(peer);
+
+        // a write publishes its key: the writer keeps the entry it has just stored
+        localBus.publish("k").block();
+
+        assertThat(local.get("k")).isNotNull();
+        assertThat(peer.get("k")).isNull();
+    }
+
+    @Test
+    void messageWithoutNodeIdIsIgnored() {
+        NearCache peer = nearCache("k");
+        bus(peer);
+
+        channel.tryEmitNext("k");
+
+        assertThat(peer.get("k")).isNotNull();
+    }
+
+    @Test
+    void publishErrorIsNotPropagated() {
+        ReactiveStringRedisTemplate redis = mock(ReactiveStringRedisTemplate.class);
+        when(redis.convertAndSend(anyString(), anyString())).thenReturn(Mono.error(new IllegalStateException("down")));
+        CacheInvalidationBus bus = new CacheInvalidationBus(redis, new GatewayMetrics(new SimpleMeterRegistry()));
+
+        assertThat(bus.publish("k").block()).isZero();
+    }
+
+    private CacheInvalidationBus bus(NearCache nearCache) {
+        ReactiveStringRedisTemplate redis = mock(ReactiveStringRedisTemplate.class);
+        when(redis.convertAndSend(anyString(), anyString())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            channel.tryEmitNext(inv.getArgument(1));
+            return 1L;
+        }));
+        doReturn(channel.asFlux().map(message -> new ChannelMessage<>("gateway:cache:invalidate", message)))
+                .when(redis).listenToChannel(anyString());
+
+        CacheInvalidationBus bus = new CacheInvalidationBus(redis, new GatewayMetrics(new SimpleMeterRegistry()));
+        bus.register("route", nearCache);
+        bus.subscribe();
+        return bus;
+    }
+
+    private static NearCache nearCache(String... keys) {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setL1Enabled(true);
+        cfg.setTtlSeconds(60);
+        NearCache nearCache = new NearCache(cfg);
+        for (String key : keys) nearCache.put(key, new byte[]{1});
+        return nearCache;
+    }
+}
@@ -0,0 +1,63 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheKeyBuilderTests {
+
+    @Test
+    void keyIsCanonicalAndCoversEveryParamValue() {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setRouteId("smartBill");
+        cfg.setKeyByIntegrator(true);
+        CacheKeyBuilder keys = new CacheKeyBuilder(cfg);
+
+        String key = keys.build(exchange("/bin?b=2&a=1&a=3", " Int-1 ", null));
+        assertThat(key).startsWith("cache:smartBill:").hasSize("cache:smartBill:".length() + 22);
+        assertThat(keys.build(exchange("/bin?a=1&a=3&b=2", "int-1", null))).isEqualTo(key);
+        assertThat(keys.build(exchange("/bin?a=1&b=2", "int-1", null))).isNotEqualTo(key);
+        assertThat(keys.build(exchange("/bin?a=3&a=1&b=2", "int-1", null))).isNotEqualTo(key);
+        assertThat(keys.build(exchange("/bin?b=2&a=1&a=3", "int-2", null))).isNotEqualTo(key);
+        // a value cannot run into the next parameter's name
+        assertThat(keys.build(exchange("/bin?a=1b", null, null)))
+                .isNotEqualTo(keys.build(exchange("/bin?a=1&b", null, null)));
+    }
+
+    @Test
+    void varyHeadersAreLearnedBeforeAnythingIsStored() {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setKeyHeaders(List.of(" X-Tenant "));
+        CacheKeyBuilder keys = new CacheKeyBuilder(cfg);
+        assertThat(keys.headers()).containsExactly("x-tenant");
+
+        String before = keys.build(exchange("/bin", null, "uz"));
+        HttpHeaders response = new HttpHeaders();
+        response.setVary(List.of(HttpHeaders.ACCEPT_ENCODING, "X-Tenant"));
+        assertThat(keys.covers(response)).isTrue();
+
+        response.setVary(List.of(HttpHeaders.ACCEPT_LANGUAGE));
+        assertThat(keys.covers(response)).isFalse();
+        assertThat(keys.headers()).containsExactly("accept-language", "x-tenant");
+        assertThat(keys.covers(response)).isTrue();
+
+        String uz = keys.build(exchange("/bin", null, "uz"));
+        assertThat(uz).isNotEqualTo(before).isNotEqualTo(keys.build(exchange("/bin", null, "ru")));
+
+        response.setVary(List.of("*"));
+        assertThat(keys.covers(response)).isFalse();
+    }
+
+    private static MockServerWebExchange exchange(String uri, String integrator, String language) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(uri);
+        if (integrator != null) request.header(CacheKeyBuilder.INTEGRATOR_HEADER, integrator);
+        if (language != null) request.header(HttpHeaders.ACCEPT_LANGUAGE, language);
+        return MockServerWebExchange.from(request.build());
+    }
+}
@@ -0,0 +1,147 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.filter.headers.RemoveHopByHopHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class CacheRefresherTests {
+
+    private static final String KEY = "cache:smartBill:key";
+
+    private final ResponseCacheStore store = mock(ResponseCacheStore.class);
+    private final List<ClientRequest> requests = new CopyOnWriteArrayList<>();
+    private final HttpClientProperties httpClient = new HttpClientProperties();
+
+    @Test
+    void refreshDropsConditionalAndHopByHopHeaders() throws Exception {
+        when(store.save(any(), any(), anyString(), any(), any(), anyList())).thenReturn(Mono.just(true));
+        CacheRefresher refresher = refresher(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.CONNECTION, "keep-alive")
+                .header(HttpHeaders.TRANSFER_ENCODING, "chunked")
+                .header("Keep-Alive", "timeout=5")
+                .body("{\"inn\":\"1\"}")
+                .build()));
+
+        MockServerWebExchange exchange = exchange(Map.of(), MockServerHttpRequest.get("/bin?inn=1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"v1\"")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2026 07:28:00 GMT")
+                .header(HttpHeaders.CONNECTION, "keep-alive")
+                .header("X-Integrator-Id", "int-1"));
+        refresher.refresh(exchange, cfg(), new CacheKeyBuilder(cfg()), KEY, null);
+
+        ArgumentCaptor<byte[]> record = ArgumentCaptor.forClass(byte[].class);
+        verify(store, timeout(1000)).save(any(), isNull(), eq(KEY), record.capture(), any(), anyList());
+
+        HttpHeaders sent = requests.get(0).headers();
+        assertThat(requests.get(0).url().toString()).isEqualTo("http://upstream:8080/bin?inn=1");
+        assertThat(sent).doesNotContainKeys(HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.CONNECTION);
+        assertThat(sent.getFirst("X-Integrator-Id")).isEqualTo("int-1");
+
+        CachedResponse stored = CacheEntryCodec.decode(record.getValue());
+        assertThat(stored.headers()).doesNotContainKeys(HttpHeaders.CONNECTION, HttpHeaders.TRANSFER_ENCODING, "Keep-Alive");
+        assertThat(stored.headers().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void stalledRefreshTimesOutAndFreesItsKey() throws InterruptedException {
+        CacheRefresher refresher = refresher(request -> Mono.never());
+        MockServerWebExchange exchange = exchange(Map.of(RESPONSE_TIMEOUT_ATTR, 50), MockServerHttpRequest.get("/bin"));
+
+        refresher.refresh(exchange, cfg(), new CacheKeyBuilder(cfg()), KEY, null);
+        // still running: a second refresh of the key is skipped
+        refresher.refresh(exchange, cfg(), new CacheKeyBuilder(cfg()), KEY, null);
+        assertThat(requests).hasSize(1);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (requests.size() < 2 && System.currentTimeMillis() < deadline) {
+            refresher.refresh(exchange, cfg(), new CacheKeyBuilder(cfg()), KEY, null);
+            Thread.sleep(10);
+        }
+        assertThat(requests).hasSize(2);
+    }
+
+    @Test
+    void timeoutFollowsTheRouteThenTheGateway() {
+        CacheRefresher refresher = refresher(request -> Mono.never());
+        assertThat(refresher.timeout(route(Map.of()))).isEqualTo(CacheRefresher.DEFAULT_TIMEOUT);
+
+        httpClient.setResponseTimeout(Duration.ofSeconds(3));
+        assertThat(refresher.timeout(route(Map.of()))).isEqualTo(Duration.ofSeconds(3));
+        assertThat(refresher.timeout(route(Map.of(RESPONSE_TIMEOUT_ATTR, 200)))).isEqualTo(Duration.ofMillis(200));
+        // disabled for the route
+        assertThat(refresher.timeout(route(Map.of(RESPONSE_TIMEOUT_ATTR, -1)))).isEqualTo(CacheRefresher.DEFAULT_TIMEOUT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheRefresher refresher(Function<ClientRequest, Mono<ClientResponse>> upstream) {
+        ObjectProvider<List<HttpHeadersFilter>> filters = mock(ObjectProvider.class);
+        when(filters.getIfAvailable(any())).thenReturn(List.of(new RemoveHopByHopHeadersFilter()));
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> {
+            requests.add(request);
+            return upstream.apply(request);
+        });
+        return new CacheRefresher(builder, store, new GatewayMetrics(new SimpleMeterRegistry()), filters, httpClient);
+    }
+
+    private static MockServerWebExchange exchange(Map<String, ?> metadata, MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route(metadata));
+        return exchange;
+    }
+
+    private static Route route(Map<String, ?> metadata) {
+        return Route.async()
+                .id("smartBill")
+                .uri("http://upstream:8080")
+                .predicate(exchange -> true)
+                .metadata(new HashMap<String, Object>(metadata))
+                .build();
+    }
+
+    private static ResponseCacheProperty cfg() {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setRouteId("smartBill");
+        cfg.setTtlSeconds(60);
+        cfg.setMaxBytes(1024 * 1024);
+        cfg.setOnly200(true);
+        cfg.setJsonOnly(true);
+        return cfg;
+    }
+}
@@ -0,0 +1,175 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the cache store and tag purge scripts against a real Redis; skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CacheScriptsTests {
+
+    private static final String STORE = "scripts/cache/store.lua";
+    private static final String PURGE = "scripts/cache/purge_tag.lua";
+    private static final String TAG = ResponseCacheStore.TAG_PREFIX + "route:smartBill";
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static RedisClient client;
+    private static RedisCommands<String, byte[]> redis;
+
+    @BeforeAll
+    static void connect() {
+        client = RedisClient.create(RedisURI.create(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        redis = client.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE)).sync();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        client.shutdown();
+    }
+
+    @BeforeEach
+    void flush() {
+        redis.flushall();
+    }
+
+    @Test
+    void recordAndValidatorShareTheTtl() {
+        assertThat(store("cache:a", 60_000, TAG)).isEqualTo(1L);
+
+        assertThat(redis.get("cache:a")).isEqualTo(bytes("record"));
+        assertThat(redis.get(ResponseCacheStore.VALIDATOR_PREFIX + "cache:a")).isEqualTo(bytes("validator"));
+        assertThat(redis.pttl("cache:a")).isBetween(59_000L, 60_000L);
+        assertThat(redis.pttl(ResponseCacheStore.VALIDATOR_PREFIX + "cache:a")).isBetween(59_000L, 60_000L);
+    }
+
+    @Test
+    void writeDropsExpiredMembersOfTheIndex() {
+        long now = redisNow();
+        redis.zadd(TAG, now - 1_000, bytes("cache:expired"));
+        redis.zadd(TAG, now + 60_000, bytes("cache:live"));
+
+        store("cache:a", 60_000, TAG);
+
+        assertThat(members(TAG)).containsExactlyInAnyOrder("cache:live", "cache:a");
+        assertThat(redis.zscore(TAG, bytes("cache:a"))).isBetween(now + 59_000.0, now + 61_000.0);
+    }
+
+    @Test
+    void indexLivesAsLongAsItsNewestRecord() {
+        String other = ResponseCacheStore.TAG_PREFIX + "integrator:int-1";
+        store("cache:a", 60_000, TAG, other);
+        assertThat(redis.pttl(TAG)).isBetween(59_000L, 60_000L);
+
+        store("cache:b", 120_000, TAG);
+        assertThat(redis.pttl(TAG)).isBetween(119_000L, 120_000L);
+        assertThat(redis.pttl(other)).isBetween(59_000L, 60_000L);
+
+        // a shorter record does not shorten the index
+        store("cache:c", 10_000, TAG);
+        assertThat(redis.pttl(TAG)).isBetween(119_000L, 120_000L);
+    }
+
+    @Test
+    void batchedPurgeEmptiesTheIndex() {
+        for (int i = 0; i < 5; i++) store("cache:" + i, 60_000, TAG);
+        store("cache:untagged", 60_000);
+
+        List<Integer> batches = new ArrayList<>();
+        List<String> purged;
+        while (!(purged = purge(TAG, 2)).isEmpty()) batches.add(purged.size());
+
+        assertThat(batches).containsExactly(2, 2, 1);
+        assertThat(redis.exists(TAG)).isZero();
+        for (int i = 0; i < 5; i++) {
+            assertThat(redis.exists("cache:" + i, ResponseCacheStore.VALIDATOR_PREFIX + "cache:" + i)).isZero();
+        }
+        assertThat(redis.exists("cache:untagged")).isOne();
+    }
+
+    @Test
+    void purgeDeletesTheChunksOfAChunkedRecord() {
+        long storedAt = 1_760_000_000_123L;
+        byte[] manifest = CacheEntryCodec.encodeManifest(200, new HttpHeaders(), 3_000, 3, storedAt, storedAt + 60_000);
+        store("cache:big", manifest, 60_000, TAG);
+        for (int i = 0; i < 3; i++) redis.set(ResponseCacheStore.chunkKey("cache:big", storedAt, i), bytes("chunk"));
+        // chunks of an older version of the record are not the manifest's
+        String stale = ResponseCacheStore.chunkKey("cache:big", storedAt - 1, 0);
+        redis.set(stale, bytes("chunk"));
+        store("cache:small", CacheEntryCodec.encode(200, new HttpHeaders(), bytes("{}"), storedAt, storedAt + 60_000),
+                60_000, TAG);
+
+        assertThat(purge(TAG, 10)).containsExactlyInAnyOrder("cache:big", "cache:small");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(redis.exists(ResponseCacheStore.chunkKey("cache:big", storedAt, i))).isZero();
+        }
+        assertThat(redis.exists("cache:big", "cache:small")).isZero();
+        assertThat(redis.exists(stale)).isOne();
+    }
+
+    private static long store(String key, long ttlMillis, String... tags) {
+        return store(key, bytes("record"), ttlMillis, tags);
+    }
+
+    private static long store(String key, byte[] record, long ttlMillis, String... tags) {
+        List<String> keys = new ArrayList<>(List.of(key, ResponseCacheStore.VALIDATOR_PREFIX + key));
+        keys.addAll(List.of(tags));
+        return redis.eval(load(STORE), ScriptOutputType.INTEGER, keys.toArray(String[]::new),
+                record, bytes("validator"), bytes(Long.toString(ttlMillis)));
+    }
+
+    private static List<String> purge(String index, int batch) {
+        List<Object> keys = redis.eval(load(PURGE), ScriptOutputType.MULTI, new String[]{index},
+                bytes(Integer.toString(batch)), bytes(ResponseCacheStore.VALIDATOR_PREFIX));
+        return keys.stream().map(key -> new String((byte[]) key, StandardCharsets.UTF_8)).toList();
+    }
+
+    private static List<String> members(String index) {
+        return redis.zrange(index, 0, -1).stream().map(m -> new String(m, StandardCharsets.UTF_8)).toList();
+    }
+
+    private static String load(String script) {
+        try {
+            return new ClassPathResource(script).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long redisNow() {
+        List<byte[]> time = redis.time();
+        return Long.parseLong(new String(time.get(0), StandardCharsets.US_ASCII)) * 1000
+                + Long.parseLong(new String(time.get(1), StandardCharsets.US_ASCII)) / 1000;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
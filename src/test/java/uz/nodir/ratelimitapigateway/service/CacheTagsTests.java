@@ -0,0 +1,39 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheTagsTests {
+
+    @Test
+    void tagsCoverRouteIntegratorPathPrefixesAndUpstreamTags() {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setRouteId("smartBill");
+        cfg.setKeyByIntegrator(true);
+        cfg.setTagPathDepth(2);
+        var request = MockServerHttpRequest.get("/internal/api/bin?inn=1")
+                .header(CacheKeyBuilder.INTEGRATOR_HEADER, " Int-1 ")
+                .build();
+        HttpHeaders response = new HttpHeaders();
+        response.add("Cache-Tag", "bins, inn-1  route:smartBill");
+
+        assertThat(CacheTags.tags(cfg, request, response)).containsExactly(
+                "route:smartBill", "integrator:int-1", "path:/internal", "path:/internal/api", "bins", "inn-1");
+        assertThat(response.containsKey("Cache-Tag")).isFalse();
+
+        cfg.setTagPathDepth(5);
+        assertThat(CacheTags.tags(cfg, request, new HttpHeaders()))
+                .containsExactly("route:smartBill", "integrator:int-1", "path:/internal", "path:/internal/api",
+                        "path:/internal/api/bin");
+
+        cfg.setKeyByIntegrator(false);
+        assertThat(CacheTags.tags(cfg, MockServerHttpRequest.get("/").build(), new HttpHeaders()))
+                .isEqualTo(List.of("route:smartBill"));
+    }
+}
@@ -0,0 +1,65 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import uz.nodir.ratelimitapigateway.model.dto.CacheValidator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheValidationTests {
+
+    @Test
+    void validatorRoundTripsAndMatchesConditionalRequests() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        var body = List.of(DefaultDataBufferFactory.sharedInstance.wrap("{\"ok\":true}".getBytes(StandardCharsets.UTF_8)));
+        CacheValidation.addValidators(headers, body, 1_760_000_000_500L);
+
+        CacheValidator validator = CacheEntryCodec.decodeValidator(
+                CacheEntryCodec.encodeValidator(CacheValidation.validator(headers, 42L)));
+        assertThat(validator.etag()).isEqualTo(headers.getFirst(HttpHeaders.ETAG)).startsWith("\"");
+        assertThat(validator.lastModified()).isEqualTo(1_760_000_000_000L);
+        assertThat(validator.freshUntil()).isEqualTo(42L);
+
+        HttpHeaders request = new HttpHeaders();
+        request.add(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + validator.etag());
+        assertThat(CacheValidation.notModified(request, validator.etag(), validator.lastModified())).isTrue();
+
+        // If-None-Match takes precedence over If-Modified-Since
+        request.set(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.setIfModifiedSince(validator.lastModified());
+        assertThat(CacheValidation.notModified(request, validator.etag(), validator.lastModified())).isFalse();
+
+        request.remove(HttpHeaders.IF_NONE_MATCH);
+        assertThat(CacheValidation.notModified(request, validator.etag(), validator.lastModified())).isTrue();
+        request.setIfModifiedSince(validator.lastModified() - 1000);
+        assertThat(CacheValidation.notModified(request, validator.etag(), validator.lastModified())).isFalse();
+    }
+
+    @Test
+    void gzipFormGetsItsOwnStrongTagAndBothFormsMatch() {
+        assertThat(CacheValidation.gzipTag("\"abc\"")).isEqualTo("\"abc-gz\"");
+        assertThat(CacheValidation.gzipTag("\"abc-gz\"")).isEqualTo("\"abc-gz\"");
+        assertThat(CacheValidation.identityTag("\"abc-gz\"")).isEqualTo("\"abc\"");
+        assertThat(CacheValidation.identityTag("\"abc\"")).isEqualTo("\"abc\"");
+        // weak tags are shared by both codings
+        assertThat(CacheValidation.gzipTag("W/\"abc\"")).isEqualTo("W/\"abc\"");
+        assertThat(CacheValidation.gzipTag(null)).isNull();
+
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.IF_NONE_MATCH, "\"abc-gz\"");
+        assertThat(CacheValidation.notModified(request, "\"abc\"", -1)).isTrue();
+        assertThat(CacheValidation.notModified(request, "\"abc-gz\"", -1)).isTrue();
+        assertThat(CacheValidation.notModifiedTag(request, "\"abc\"")).isEqualTo("\"abc-gz\"");
+
+        request.set(HttpHeaders.IF_NONE_MATCH, "\"abc\"");
+        assertThat(CacheValidation.notModified(request, "\"abc-gz\"", -1)).isTrue();
+        assertThat(CacheValidation.notModifiedTag(request, "\"abc-gz\"")).isEqualTo("\"abc\"");
+
+        request.set(HttpHeaders.IF_NONE_MATCH, "\"abd-gz\"");
+        assertThat(CacheValidation.notModified(request, "\"abc\"", -1)).isFalse();
+    }
+}
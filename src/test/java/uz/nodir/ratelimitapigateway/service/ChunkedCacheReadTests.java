@@ -0,0 +1,180 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.BODY;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.body;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.cacheHeader;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.exchange;
+
+/**
+ * Replaying a chunked entry: chunks come back in order with bounded read-ahead, and an entry
+ * that lost a chunk is a miss rather than a truncated body.
+ */
+class ChunkedCacheReadTests {
+
+    private static final String KEY = "cache:smartBill:key";
+    private static final long STORED_AT = System.currentTimeMillis();
+
+    @SuppressWarnings("unchecked")
+    private final ReactiveRedisTemplate<String, byte[]> redis = mock(ReactiveRedisTemplate.class);
+    private final RedisBatcher batcher = mock(RedisBatcher.class);
+    private final RedisGuard guard = mock(RedisGuard.class);
+    private final ResponseCacheStore store;
+
+    ChunkedCacheReadTests() {
+        when(guard.cache(any(), any())).thenAnswer(inv -> inv.getArgument(0));
+        store = new ResponseCacheStore(redis, batcher, mock(CacheInvalidationBus.class), guard,
+                new GatewayMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void chunksArriveInOrderWithAtMostPrefetchReadsInFlight() {
+        List<Sinks.One<byte[]>> reads = new CopyOnWriteArrayList<>();
+        List<String> requested = new CopyOnWriteArrayList<>();
+        when(batcher.get(anyString())).thenAnswer(inv -> {
+            Sinks.One<byte[]> read = Sinks.one();
+            reads.add(read);
+            requested.add(inv.getArgument(0));
+            return read.asMono();
+        });
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        store.readChunks(KEY, manifest(4), 2)
+                .map(chunk -> new String(chunk, StandardCharsets.UTF_8))
+                .subscribe(received::add);
+        assertThat(requested).containsExactly(chunkKey(0), chunkKey(1));
+
+        // the second chunk answers first, it waits for the first one
+        reads.get(1).tryEmitValue(bytes("1"));
+        assertThat(received).isEmpty();
+        assertThat(requested).hasSize(2);
+
+        reads.get(0).tryEmitValue(bytes("0"));
+        assertThat(received).containsExactly("0", "1");
+        assertThat(requested).containsExactly(chunkKey(0), chunkKey(1), chunkKey(2), chunkKey(3));
+
+        reads.get(3).tryEmitValue(bytes("3"));
+        reads.get(2).tryEmitValue(bytes("2"));
+        assertThat(received).containsExactly("0", "1", "2", "3");
+    }
+
+    @Test
+    void readFailsWhenAChunkIsGone() {
+        when(batcher.get(anyString())).thenAnswer(inv -> chunkKey(1).equals(inv.getArgument(0))
+                ? Mono.empty()
+                : Mono.just(bytes("x")));
+
+        assertThatThrownBy(() -> store.readChunks(KEY, manifest(3), 2).collectList().block(Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(chunkKey(1));
+    }
+
+    @Test
+    void hasChunksCountsEveryChunkKey() {
+        when(redis.countExistingKeys(anyCollection())).thenReturn(Mono.just(3L)).thenReturn(Mono.just(2L));
+
+        assertThat(store.hasChunks(KEY, manifest(3)).block()).isTrue();
+        assertThat(store.hasChunks(KEY, manifest(3)).block()).isFalse();
+        verify(redis, times(2)).countExistingKeys(eq(List.of(chunkKey(0), chunkKey(1), chunkKey(2))));
+    }
+
+    @Test
+    void hasChunksIsFalseWhenRedisFails() {
+        RedisGuard failing = mock(RedisGuard.class);
+        when(failing.cache(any(), any())).thenAnswer(inv -> {
+            Function<Throwable, Mono<Long>> fallback = inv.getArgument(1);
+            return fallback.apply(new IOException("Redis is down"));
+        });
+        ResponseCacheStore store = new ResponseCacheStore(redis, batcher, mock(CacheInvalidationBus.class), failing,
+                new GatewayMetrics(new SimpleMeterRegistry()));
+        when(redis.countExistingKeys(anyCollection())).thenReturn(Mono.just(3L));
+
+        assertThat(store.hasChunks(KEY, manifest(3)).block()).isFalse();
+    }
+
+    @Test
+    void entryMissingAChunkIsForwardedUpstream() {
+        CacheFilterFixture fixture = chunkedHit(false);
+
+        MockServerWebExchange exchange = exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(fixture.upstreamCalls).hasValue(1);
+        assertThat(cacheHeader(exchange)).isEqualTo("MISS");
+        assertThat(body(exchange)).isEqualTo(BODY);
+        verify(fixture.store, never()).readChunks(anyString(), any(), anyInt());
+    }
+
+    @Test
+    void completeEntryIsReplayedFromItsChunks() {
+        CacheFilterFixture fixture = chunkedHit(true);
+        when(fixture.store.readChunks(anyString(), any(), anyInt()))
+                .thenReturn(Flux.just(bytes("{\"inn\""), bytes(":\"1\"}")));
+
+        MockServerWebExchange exchange = exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(fixture.upstreamCalls).hasValue(0);
+        assertThat(cacheHeader(exchange)).isEqualTo("HIT");
+        assertThat(body(exchange)).isEqualTo(BODY);
+    }
+
+    private static CacheFilterFixture chunkedHit(boolean complete) {
+        CacheFilterFixture fixture = new CacheFilterFixture();
+        fixture.cfg.setChunkedEnabled(true);
+        when(fixture.store.lookup(any(), anyString())).thenReturn(Mono.just(encodedManifest(2)));
+        when(fixture.store.hasChunks(anyString(), any(CachedResponse.class))).thenReturn(Mono.just(complete));
+        return fixture;
+    }
+
+    private static CachedResponse manifest(int chunks) {
+        try {
+            return CacheEntryCodec.decode(encodedManifest(chunks));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encodedManifest(int chunks) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return CacheEntryCodec.encodeManifest(200, headers, BODY.length(), chunks, STORED_AT, STORED_AT + 60_000);
+    }
+
+    private static String chunkKey(int index) {
+        return ResponseCacheStore.chunkKey(KEY, STORED_AT, index);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
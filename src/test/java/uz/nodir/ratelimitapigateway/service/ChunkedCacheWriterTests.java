@@ -0,0 +1,227 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.CachedResponse;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkedCacheWriterTests {
+
+    private static final String KEY = "cache:smartBill:key";
+    private static final long STORED_AT = 1_700_000_000_000L;
+    private static final int CHUNK = 1024;
+
+    private final ResponseCacheStore store = mock(ResponseCacheStore.class);
+    // chunk key to the bytes stored under it
+    private final Map<String, byte[]> saved = new TreeMap<>();
+    private final DefaultDataBufferFactory buffers = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void buffersAcrossChunkBoundariesAreStoredAsFullChunksAndATail() throws Exception {
+        saveAnswers(Integer.MAX_VALUE);
+        ChunkedCacheWriter writer = new ChunkedCacheWriter(store, cfg(1 << 20), KEY, STORED_AT);
+        byte[] body = body(2100);
+
+        // 700-byte buffers: the first chunk ends inside the second buffer
+        for (int from = 0; from < body.length; from += 700) {
+            DataBuffer buffer = buffers.wrap(Arrays.copyOfRange(body, from, Math.min(body.length, from + 700)));
+            writer.append(buffer).block();
+            // the buffer is copied, not consumed, it still goes to the client
+            assertThat(buffer.readableByteCount()).isEqualTo(Math.min(700, body.length - from));
+        }
+        assertThat(saved).hasSize(2);
+
+        byte[] manifest = writer.finish(200, headers(), STORED_AT + 60_000).block();
+
+        assertThat(saved).containsOnlyKeys(chunkKey(0), chunkKey(1), chunkKey(2));
+        assertThat(saved.get(chunkKey(0))).hasSize(CHUNK);
+        assertThat(saved.get(chunkKey(1))).hasSize(CHUNK);
+        assertThat(saved.get(chunkKey(2))).hasSize(2100 - 2 * CHUNK);
+        assertThat(concat(saved)).isEqualTo(body);
+
+        CachedResponse entry = CacheEntryCodec.decode(manifest);
+        assertThat(entry.isChunked()).isTrue();
+        assertThat(entry.chunks()).isEqualTo(3);
+        assertThat(entry.bodyLength()).isEqualTo(2100);
+        assertThat(entry.storedAt()).isEqualTo(STORED_AT);
+    }
+
+    @Test
+    void bodyOfExactlyWholeChunksHasNoEmptyTail() throws Exception {
+        saveAnswers(Integer.MAX_VALUE);
+        ChunkedCacheWriter writer = new ChunkedCacheWriter(store, cfg(1 << 20), KEY, STORED_AT);
+
+        writer.append(buffers.wrap(body(2 * CHUNK))).block();
+        CachedResponse entry = CacheEntryCodec.decode(writer.finish(200, headers(), STORED_AT + 60_000).block());
+
+        assertThat(saved).hasSize(2);
+        assertThat(entry.chunks()).isEqualTo(2);
+    }
+
+    @Test
+    void bodyOverChunkedMaxBytesIsNotStored() {
+        saveAnswers(Integer.MAX_VALUE);
+        ChunkedCacheWriter writer = new ChunkedCacheWriter(store, cfg(2048), KEY, STORED_AT);
+
+        writer.append(buffers.wrap(body(1500))).block();
+        // past the limit the rest only streams through
+        writer.append(buffers.wrap(body(1500))).block();
+        writer.append(buffers.wrap(body(1500))).block();
+
+        assertThat(writer.finish(200, headers(), STORED_AT + 60_000).blockOptional()).isEmpty();
+        assertThat(saved).containsOnlyKeys(chunkKey(0));
+    }
+
+    @Test
+    void failedChunkWriteDropsTheEntry() {
+        saveAnswers(1);
+        ChunkedCacheWriter writer = new ChunkedCacheWriter(store, cfg(1 << 20), KEY, STORED_AT);
+
+        writer.append(buffers.wrap(body(3 * CHUNK + 10))).block();
+
+        assertThat(writer.finish(200, headers(), STORED_AT + 60_000).blockOptional()).isEmpty();
+        // nothing is written after the failure
+        assertThat(saved).containsOnlyKeys(chunkKey(0));
+    }
+
+    @Test
+    void bodyOverMaxBytesIsStreamedAndStoredAsChunks() throws Exception {
+        CacheFilterFixture fixture = chunkedFixture(1 << 20);
+        byte[] body = body(2500);
+
+        MockServerWebExchange exchange = CacheFilterFixture.exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(CacheFilterFixture.body(exchange)).isEqualTo(new String(body, StandardCharsets.UTF_8));
+        assertThat(CacheFilterFixture.cacheHeader(exchange)).isEqualTo("MISS");
+
+        ArgumentCaptor<byte[]> manifest = ArgumentCaptor.forClass(byte[].class);
+        verify(fixture.store).save(any(), any(), anyString(), manifest.capture(), any(), anyList());
+        CachedResponse entry = CacheEntryCodec.decode(manifest.getValue());
+        assertThat(entry.isChunked()).isTrue();
+        assertThat(entry.chunks()).isEqualTo(3);
+        assertThat(entry.bodyLength()).isEqualTo(2500);
+        // the filter hashes the cache key; fewer than ten chunks sort by index
+        assertThat(saved).hasSize(3);
+        assertThat(saved.keySet()).allMatch(key -> key.startsWith("cache:smartBill:"));
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        for (byte[] chunk : saved.values()) stored.write(chunk);
+        assertThat(stored.toByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    void bodyOverChunkedMaxBytesStreamsThroughTheFilterWithoutAnEntry() {
+        CacheFilterFixture fixture = chunkedFixture(2048);
+
+        MockServerWebExchange exchange = CacheFilterFixture.exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(CacheFilterFixture.body(exchange)).isEqualTo(new String(body(2500), StandardCharsets.UTF_8));
+        verify(fixture.store, never()).save(any(), any(), anyString(), any(), any(), anyList());
+    }
+
+    @Test
+    void failedChunkWriteStreamsThroughTheFilterWithoutAnEntry() {
+        CacheFilterFixture fixture = chunkedFixture(1 << 20);
+        saveAnswers(fixture.store, 1);
+
+        MockServerWebExchange exchange = CacheFilterFixture.exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(CacheFilterFixture.body(exchange)).isEqualTo(new String(body(2500), StandardCharsets.UTF_8));
+        assertThat(saved).hasSize(1);
+        verify(fixture.store, never()).save(any(), any(), anyString(), any(), any(), anyList());
+    }
+
+    /**
+     * A filter with chunked caching over {@code maxBytes} of 1000, in front of an upstream that
+     * answers 2500 bytes in 500-byte buffers.
+     */
+    private CacheFilterFixture chunkedFixture(long chunkedMaxBytes) {
+        CacheFilterFixture fixture = new CacheFilterFixture();
+        fixture.cfg.setMaxBytes(1000);
+        fixture.cfg.setChunkedEnabled(true);
+        fixture.cfg.setChunkBytes(CHUNK);
+        fixture.cfg.setChunkedMaxBytes(chunkedMaxBytes);
+        saveAnswers(fixture.store, Integer.MAX_VALUE);
+        byte[] body = body(2500);
+        fixture.upstream = (exchange, call) -> {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return response.writeWith(Flux.range(0, 5)
+                    .map(i -> response.bufferFactory().wrap(Arrays.copyOfRange(body, i * 500, i * 500 + 500))));
+        };
+        return fixture;
+    }
+
+    private void saveAnswers(int succeeding) {
+        saveAnswers(store, succeeding);
+    }
+
+    /**
+     * Stores the first {@code succeeding} chunks, the later ones fail.
+     */
+    private void saveAnswers(ResponseCacheStore store, int succeeding) {
+        when(store.saveChunk(any(), anyString(), any())).thenAnswer(inv -> Mono.fromCallable(() -> {
+            if (saved.size() >= succeeding) return false;
+            saved.put(inv.getArgument(1), inv.getArgument(2));
+            return true;
+        }));
+    }
+
+    private static String chunkKey(int index) {
+        return ResponseCacheStore.chunkKey(KEY, STORED_AT, index);
+    }
+
+    private static byte[] concat(Map<String, byte[]> chunks) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) out.write(chunks.get(chunkKey(i)));
+        return out.toByteArray();
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) body[i] = (byte) ('a' + i % 26);
+        return body;
+    }
+
+    private static HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private static ResponseCacheProperty cfg(long chunkedMaxBytes) {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setRouteId("smartBill");
+        cfg.setChunkBytes(CHUNK);
+        cfg.setChunkedMaxBytes(chunkedMaxBytes);
+        return cfg;
+    }
+}
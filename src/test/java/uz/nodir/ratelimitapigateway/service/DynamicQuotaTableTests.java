@@ -0,0 +1,78 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Hooks;
+import uz.nodir.ratelimitapigateway.model.enums.RateLimitAlgorithm;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DynamicQuotaTableTests {
+
+    @Test
+    void parsesQuotaValues() {
+        DynamicQuotaTable.Quota quota = DynamicQuotaTable.Quota.parse("1000/60");
+        assertThat(quota.limit).isEqualTo(1000);
+        assertThat(quota.windowSeconds).isEqualTo(60);
+        assertThat(DynamicQuotaTable.Quota.parse(" 50 ").windowSeconds).isZero();
+        assertThat(DynamicQuotaTable.Quota.parse("0")).isNull();
+        assertThat(DynamicQuotaTable.Quota.parse("ten/60")).isNull();
+    }
+
+    @Test
+    void appliesQuotaToRouteOnce() {
+        JsonRateLimitProperty route = new JsonRateLimitProperty();
+        route.setRouteId("smartBill");
+        route.setLimit(3);
+        route.setWindowSeconds(3600);
+        route.setAlgorithm(RateLimitAlgorithm.TOKEN_BUCKET);
+
+        DynamicQuotaTable.Quota quota = DynamicQuotaTable.Quota.parse("500");
+        JsonRateLimitProperty applied = quota.applyTo(route);
+        assertThat(applied.getLimit()).isEqualTo(500);
+        assertThat(applied.getWindowSeconds()).isEqualTo(3600);
+        assertThat(applied.getAlgorithm()).isEqualTo(RateLimitAlgorithm.TOKEN_BUCKET);
+        assertThat(quota.applyTo(route)).isSameAs(applied);
+
+        // a re-applied route gets a fresh copy
+        JsonRateLimitProperty reapplied = route.withLimit(3, 60);
+        assertThat(quota.applyTo(reapplied)).isNotSameAs(applied)
+                .extracting(JsonRateLimitProperty::getWindowSeconds).isEqualTo(60);
+    }
+
+    @Test
+    void reloadWithBothHashesFailingDropsNoError() throws InterruptedException {
+        ReactiveStringRedisTemplate redis = mock(ReactiveStringRedisTemplate.class);
+        @SuppressWarnings("unchecked")
+        ReactiveHashOperations<String, String, String> hash = mock(ReactiveHashOperations.class);
+        when(redis.listenToChannel(anyString())).thenReturn(Flux.never());
+        when(redis.<String, String>opsForHash()).thenReturn(hash);
+        when(hash.entries(anyString())).thenReturn(Flux.error(new RedisConnectionFailureException("Redis is down")));
+        List<Throwable> dropped = new CopyOnWriteArrayList<>();
+        Hooks.onErrorDropped(dropped::add);
+
+        DynamicQuotaTable table = new DynamicQuotaTable(redis);
+        try {
+            table.start();
+            verify(hash, timeout(2000)).entries(DynamicQuotaTable.PLANS_KEY);
+            verify(hash, timeout(2000)).entries(DynamicQuotaTable.QUOTAS_KEY);
+            Thread.sleep(100);
+        } finally {
+            table.destroy();
+            Hooks.resetOnErrorDropped();
+        }
+        assertThat(dropped).isEmpty();
+    }
+}
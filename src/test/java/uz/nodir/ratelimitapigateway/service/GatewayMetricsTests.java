@@ -0,0 +1,28 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GatewayMetricsTests {
+
+    @Test
+    void redisTimersAreTaggedByOperationAndOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayMetrics metrics = new GatewayMetrics(registry);
+
+        metrics.redis("cache.get", Mono.just(1)).block();
+        metrics.redis("cache.get", Mono.error(new IllegalStateException())).onErrorResume(err -> Mono.empty()).block();
+        // a timer of another meter with the same tag value stays apart
+        metrics.serialization("cache.get", System.nanoTime());
+
+        assertThat(registry.get("gateway.redis.latency").tags("operation", "cache.get", "outcome", "success").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("gateway.redis.latency").tags("operation", "cache.get", "outcome", "error").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("gateway.cache.serialization").tags("operation", "cache.get").timer().count())
+                .isEqualTo(1);
+    }
+}
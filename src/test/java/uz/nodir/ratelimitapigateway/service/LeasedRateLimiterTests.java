@@ -0,0 +1,108 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LeasedRateLimiterTests {
+
+    private static final String KEY = "redisRateLimiter:int-1";
+    private static final int LIMIT = 1000;
+    // far more than the 50 permits of one lease
+    private static final int CALLERS = 1200;
+
+    private final RedisBatcher batcher = mock(RedisBatcher.class);
+    private final AtomicInteger leaseCalls = new AtomicInteger();
+    private long used;
+
+    @Test
+    void waitersOfASpentLeaseAdmitExactlyTheLimit() {
+        // answered on one Redis connection thread, as Lettuce does
+        LeasedRateLimiter limiter = limiter(call -> call.delayElement(Duration.ofMillis(1), Schedulers.single()));
+
+        Map<Boolean, Long> decisions = burst(limiter);
+
+        assertThat(decisions).containsEntry(true, (long) LIMIT).containsEntry(false, (long) (CALLERS - LIMIT));
+        // 20 leases of 50, one that finds the window used up
+        assertThat(leaseCalls).hasValue(LIMIT / 50 + 1);
+    }
+
+    @Test
+    void leaseAnsweredOnTheCallingThreadAdmitsExactlyTheLimit() {
+        LeasedRateLimiter limiter = limiter(Function.identity());
+
+        assertThat(burst(limiter)).containsEntry(true, (long) LIMIT).containsEntry(false, (long) (CALLERS - LIMIT));
+    }
+
+    @Test
+    void failedLeaseIsNotSharedWithLaterCallers() {
+        LeasedRateLimiter limiter = limiter(call -> leaseCalls.get() == 1
+                ? Mono.error(new IllegalStateException("Redis is down"))
+                : call);
+
+        assertThat(limiter.tryAcquire(KEY, property()).onErrorResume(err -> Mono.empty()).block()).isNull();
+        assertThat(limiter.tryAcquire(KEY, property()).block())
+                .extracting(RateLimitDecision::allowed).isEqualTo(true);
+    }
+
+    private Map<Boolean, Long> burst(LeasedRateLimiter limiter) {
+        JsonRateLimitProperty property = property();
+        return Flux.range(0, CALLERS)
+                .flatMap(i -> limiter.tryAcquire(KEY, property), CALLERS)
+                .collect(Collectors.partitioningBy(RateLimitDecision::allowed, Collectors.counting()))
+                .block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * A limiter over an in-memory lease_acquire; {@code answer} decides how the call completes.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private LeasedRateLimiter limiter(Function<Mono<List>, Mono<List>> answer) {
+        when(batcher.evalList(any(RedisScript.class), anyList(), anyList())).thenAnswer(inv -> {
+            List<String> args = inv.getArgument(2);
+            long limit = Long.parseLong(args.get(0));
+            long window = Long.parseLong(args.get(1));
+            long batch = Long.parseLong(args.get(2));
+            leaseCalls.incrementAndGet();
+            return answer.apply(Mono.<List>fromCallable(() -> acquire(limit, window, batch)));
+        });
+        ReactiveStringRedisTemplate redis = mock(ReactiveStringRedisTemplate.class);
+        when(redis.execute(any(RedisScript.class), anyList(), anyList())).thenReturn(Flux.just(0L));
+        return new LeasedRateLimiter(redis, batcher, new GatewayMetrics(new SimpleMeterRegistry()));
+    }
+
+    private synchronized List<Long> acquire(long limit, long window, long batch) {
+        long granted = Math.max(0, Math.min(batch, limit - used));
+        used += granted;
+        return List.of(granted, limit - used, System.currentTimeMillis() + window, window);
+    }
+
+    private static JsonRateLimitProperty property() {
+        JsonRateLimitProperty property = new JsonRateLimitProperty();
+        property.setLimit(LIMIT);
+        property.setWindowSeconds(60);
+        property.setLeasingEnabled(true);
+        property.setLeasePercent(5);
+        property.setLeaseMaxMillis(60_000);
+        return property;
+    }
+}
@@ -0,0 +1,103 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import uz.nodir.ratelimitapigateway.model.property.ResponseCacheProperty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link NearCache}: bounded by entries and by bytes at once, entries expire after the L1 TTL,
+ * which never outlives the Redis record.
+ */
+class NearCacheTests {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void smallEntriesAreBoundedByCount() {
+        NearCache cache = cache(1_000, 10, 5, 60);
+
+        IntStream.range(0, 50).forEach(i -> cache.put("k" + i, new byte[1]));
+
+        assertThat(present(cache, 50)).isBetween(1L, 10L);
+    }
+
+    @Test
+    void largeEntriesAreBoundedByBytes() {
+        NearCache cache = cache(1_000, 1_000, 5, 60);
+
+        IntStream.range(0, 10).forEach(i -> cache.put("k" + i, new byte[300]));
+
+        // 302 bytes per entry with its key
+        assertThat(present(cache, 10)).isBetween(1L, 3L);
+    }
+
+    @Test
+    void entryOverMaxBytesIsNotKept() {
+        NearCache cache = cache(1_000, 10, 5, 60);
+
+        cache.put("big", new byte[2_000]);
+
+        assertThat(cache.get("big")).isNull();
+    }
+
+    @Test
+    void entryExpiresAfterTheL1Ttl() {
+        NearCache cache = cache(1_000, 10, 5, 60);
+        cache.put("k", new byte[]{1});
+
+        advance(4_999);
+        assertThat(cache.get("k")).containsExactly(1);
+        advance(1);
+        assertThat(cache.get("k")).isNull();
+    }
+
+    @Test
+    void l1TtlIsCappedByTheRedisRetention() {
+        ResponseCacheProperty cfg = cfg(1_000, 10, 30, 2);
+        cfg.setStaleWhileRevalidateSeconds(1);
+        NearCache cache = new NearCache(cfg, nanos::get, Runnable::run);
+        cache.put("k", new byte[]{1});
+
+        advance(2_999);
+        assertThat(cache.get("k")).isNotNull();
+        advance(1);
+        assertThat(cache.get("k")).isNull();
+    }
+
+    @Test
+    void invalidateDropsTheEntry() {
+        NearCache cache = cache(1_000, 10, 5, 60);
+        cache.put("k", new byte[]{1});
+
+        cache.invalidate("k");
+
+        assertThat(cache.get("k")).isNull();
+    }
+
+    private NearCache cache(long maxBytes, int maxEntries, long l1TtlSeconds, long ttlSeconds) {
+        return new NearCache(cfg(maxBytes, maxEntries, l1TtlSeconds, ttlSeconds), nanos::get, Runnable::run);
+    }
+
+    private static ResponseCacheProperty cfg(long maxBytes, int maxEntries, long l1TtlSeconds, long ttlSeconds) {
+        ResponseCacheProperty cfg = new ResponseCacheProperty();
+        cfg.setL1Enabled(true);
+        cfg.setL1MaxBytes(maxBytes);
+        cfg.setL1MaxEntries(maxEntries);
+        cfg.setL1TtlSeconds(l1TtlSeconds);
+        cfg.setTtlSeconds(ttlSeconds);
+        return cfg;
+    }
+
+    private void advance(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static long present(NearCache cache, int keys) {
+        return IntStream.range(0, keys).filter(i -> cache.get("k" + i) != null).count();
+    }
+}
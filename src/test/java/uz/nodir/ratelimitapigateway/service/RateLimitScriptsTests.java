@@ -0,0 +1,239 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import uz.nodir.ratelimitapigateway.model.enums.RateLimitAlgorithm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the limiter scripts against a real Redis; skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RateLimitScriptsTests {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static RedisClient client;
+    private static RedisCommands<String, String> redis;
+
+    @BeforeAll
+    static void connect() {
+        client = RedisClient.create(RedisURI.create(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        redis = client.connect().sync();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        client.shutdown();
+    }
+
+    @BeforeEach
+    void flush() {
+        redis.flushall();
+    }
+
+    @Test
+    void fixedWindowCountsUpToTheLimitAndSetsTtl() {
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 3, 60_000)).containsExactly(1L, 2L, 0L);
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 3, 60_000)).containsExactly(1L, 1L, 0L);
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 3, 60_000)).containsExactly(1L, 0L, 0L);
+
+        List<Long> rejected = run(RateLimitAlgorithm.FIXED_WINDOW, "k", 3, 60_000);
+        assertThat(rejected).hasSize(3).startsWith(0L, 0L);
+        assertThat(rejected.get(2)).isBetween(59_000L, 60_000L);
+        assertThat(redis.pttl("k")).isBetween(59_000L, 60_000L);
+    }
+
+    @Test
+    void fixedWindowRollsOverWhenTheCounterExpires() throws InterruptedException {
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 1, 300).get(0)).isEqualTo(1L);
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 1, 300).get(0)).isZero();
+
+        Thread.sleep(400);
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 1, 300)).containsExactly(1L, 0L, 0L);
+    }
+
+    @Test
+    void fixedWindowRepairsACounterWithoutTtl() {
+        redis.set("k", "5");
+        assertThat(run(RateLimitAlgorithm.FIXED_WINDOW, "k", 10, 60_000)).containsExactly(1L, 4L, 0L);
+        assertThat(redis.pttl("k")).isPositive();
+    }
+
+    @Test
+    void slidingWindowLogAdmitsUpToTheLimitWithinTheWindow() throws InterruptedException {
+        assertThat(runLog("k", 2, 500)).containsExactly(1L, 1L, 0L);
+        assertThat(runLog("k", 2, 500)).containsExactly(1L, 0L, 0L);
+
+        List<Long> rejected = runLog("k", 2, 500);
+        assertThat(rejected).hasSize(3).startsWith(0L, 0L);
+        assertThat(rejected.get(2)).isBetween(1L, 500L);
+        assertThat(redis.zcard("k")).isEqualTo(2);
+        assertThat(redis.pttl("k")).isBetween(1L, 500L);
+
+        // the logged requests slide out of the window, not all at a window boundary
+        Thread.sleep(600);
+        assertThat(runLog("k", 2, 500)).containsExactly(1L, 1L, 0L);
+        assertThat(redis.zcard("k")).isEqualTo(1);
+    }
+
+    @Test
+    void slidingWindowCounterWeighsThePreviousWindow() {
+        long window = 600_000;
+        long now = redisNow();
+        long idx = now / window;
+        long elapsed = now - idx * window;
+        assumeTrue(elapsed < window - 1_000, "too close to a window boundary");
+
+        redis.hset("k", String.valueOf(idx - 1), "100");
+        redis.hset("k", String.valueOf(idx - 2), "7");
+
+        List<Long> allowed = run(RateLimitAlgorithm.SLIDING_WINDOW_COUNTER, "k", 1000, window);
+        double weighted = 100.0 * (window - elapsed) / window;
+        assertThat(allowed).hasSize(3).startsWith(1L).endsWith(0L);
+        assertThat(allowed.get(1)).isCloseTo((long) Math.floor(1000 - weighted - 1), within(1L));
+
+        assertThat(redis.hget("k", String.valueOf(idx))).isEqualTo("1");
+        assertThat(redis.hexists("k", String.valueOf(idx - 2))).isFalse();
+        assertThat(redis.pttl("k")).isBetween(window * 2 - 1_000, window * 2);
+    }
+
+    @Test
+    void slidingWindowCounterRetriesOnceThePreviousWindowDecays() {
+        long window = 600_000;
+        long now = redisNow();
+        long idx = now / window;
+        long elapsed = now - idx * window;
+        assumeTrue(elapsed < window - 1_000, "too close to a window boundary");
+
+        redis.hset("k", String.valueOf(idx - 1), "100000");
+
+        List<Long> rejected = run(RateLimitAlgorithm.SLIDING_WINDOW_COUNTER, "k", 10, window);
+        // admitted again once 100000 * (window - t) / window + 1 <= 10
+        long expected = (long) Math.ceil(window - 9.0 * window / 100_000) - elapsed;
+        assertThat(rejected).hasSize(3).startsWith(0L, 0L);
+        assertThat(rejected.get(2)).isCloseTo(expected, within(50L));
+        assertThat(redis.hexists("k", String.valueOf(idx))).isFalse();
+    }
+
+    @Test
+    void tokenBucketRefillsAtLimitPerWindow() throws InterruptedException {
+        assertThat(run(RateLimitAlgorithm.TOKEN_BUCKET, "k", 2, 1_000)).containsExactly(1L, 1L, 0L);
+        assertThat(run(RateLimitAlgorithm.TOKEN_BUCKET, "k", 2, 1_000)).containsExactly(1L, 0L, 0L);
+
+        // one token per 500ms
+        List<Long> rejected = run(RateLimitAlgorithm.TOKEN_BUCKET, "k", 2, 1_000);
+        assertThat(rejected).hasSize(3).startsWith(0L, 0L);
+        assertThat(rejected.get(2)).isBetween(400L, 500L);
+        assertThat(redis.pttl("k")).isBetween(1L, 1_000L);
+
+        Thread.sleep(550);
+        assertThat(run(RateLimitAlgorithm.TOKEN_BUCKET, "k", 2, 1_000)).containsExactly(1L, 0L, 0L);
+    }
+
+    @Test
+    void tokenBucketNeverHoldsMoreThanItsCapacity() throws InterruptedException {
+        run(RateLimitAlgorithm.TOKEN_BUCKET, "k", 3, 1_000);
+        // refills 1.5 tokens into a bucket that has room for one
+        Thread.sleep(500);
+        assertThat(run(RateLimitAlgorithm.TOKEN_BUCKET, "k", 3, 1_000)).containsExactly(1L, 2L, 0L);
+    }
+
+    @Test
+    void multiQuotaReportsTheStrictestQuotaAndCountsAllOfThem() {
+        List<String> keys = List.of("q:route", "q:integrator", "q:global");
+        assertThat(quotas(keys, 5, 3_600_000, 3, 3_600_000, 10, 3_600_000)).containsExactly(1L, 2L, 0L, 3L);
+        assertThat(quotas(keys, 5, 3_600_000, 3, 3_600_000, 10, 3_600_000)).containsExactly(1L, 1L, 0L, 3L);
+        assertThat(quotas(keys, 5, 3_600_000, 3, 3_600_000, 10, 3_600_000)).containsExactly(1L, 0L, 0L, 3L);
+
+        List<Long> rejected = quotas(keys, 5, 3_600_000, 3, 3_600_000, 10, 3_600_000);
+        assertThat(rejected).hasSize(4).startsWith(0L, 0L).endsWith(3L);
+        assertThat(rejected.get(2)).isBetween(3_599_000L, 3_600_000L);
+        // a rejection counts nothing
+        assertThat(redis.mget("q:route", "q:integrator", "q:global"))
+                .extracting(kv -> kv.getValue()).containsExactly("3", "3", "3");
+        assertThat(redis.pttl("q:global")).isPositive();
+    }
+
+    @Test
+    void multiQuotaRejectedByAnEarlierQuotaLeavesTheLaterOnesUntouched() {
+        redis.psetex("q:second", 60_000, "1");
+
+        List<Long> rejected = quotas(List.of("q:second", "q:hour", "q:day"), 1, 1_000, 100, 3_600_000, 1000, 86_400_000);
+
+        assertThat(rejected).hasSize(4).startsWith(0L, 0L).endsWith(1L);
+        assertThat(redis.exists("q:hour", "q:day")).isZero();
+        assertThat(redis.get("q:second")).isEqualTo("1");
+    }
+
+    @Test
+    void multiQuotaRetriesAfterTheRejectingQuotaThatFreesUpLast() {
+        redis.psetex("q:minute", 10_000, "5");
+        redis.psetex("q:hour", 3_000_000, "100");
+        // left without TTL by an older gateway, would otherwise reject forever
+        redis.set("q:stuck", "7");
+
+        List<Long> rejected = quotas(List.of("q:minute", "q:hour", "q:stuck"), 5, 60_000, 100, 3_600_000, 7, 1_000);
+
+        assertThat(rejected).hasSize(4).startsWith(0L, 0L).endsWith(100L);
+        assertThat(rejected.get(2)).isBetween(2_999_000L, 3_000_000L);
+        assertThat(redis.pttl("q:stuck")).isBetween(1L, 1_000L);
+    }
+
+    static List<Long> run(RateLimitAlgorithm algorithm, String key, long limit, long windowMillis) {
+        return eval(algorithm.getScript(), List.of(key), limit, windowMillis);
+    }
+
+    private static List<Long> quotas(List<String> keys, long... limitsAndWindows) {
+        return eval("scripts/ratelimit/multi_quota.lua", keys,
+                Arrays.stream(limitsAndWindows).boxed().toArray());
+    }
+
+    private static List<Long> runLog(String key, long limit, long windowMillis) {
+        return eval(RateLimitAlgorithm.SLIDING_WINDOW_LOG.getScript(), List.of(key),
+                limit, windowMillis, UUID.randomUUID());
+    }
+
+    static List<Long> eval(String script, List<String> keys, Object... args) {
+        List<Object> result = redis.eval(load(script), ScriptOutputType.MULTI,
+                keys.toArray(String[]::new),
+                Arrays.stream(args).map(String::valueOf).toArray(String[]::new));
+        return result.stream().map(Long.class::cast).toList();
+    }
+
+    private static String load(String script) {
+        try {
+            return new ClassPathResource(script).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long redisNow() {
+        List<String> time = redis.time();
+        return Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+    }
+}
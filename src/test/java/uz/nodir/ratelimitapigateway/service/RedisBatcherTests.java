@@ -0,0 +1,279 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.lettuce.core.ConnectionFuture;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import uz.nodir.ratelimitapigateway.model.property.RedisBatchProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The batcher over a mocked Lettuce connection that answers queued commands only when they are
+ * flushed, and a flusher whose scheduled flushes the test runs by hand.
+ */
+class RedisBatcherTests {
+
+    private final RedisBatchProperty property = new RedisBatchProperty();
+    private final LettuceConnectionFactory connectionFactory = mock(LettuceConnectionFactory.class);
+    private final RedisClient client = mock(RedisClient.class);
+    @SuppressWarnings("unchecked")
+    private final StatefulRedisConnection<byte[], byte[]> conn = mock(StatefulRedisConnection.class);
+    @SuppressWarnings("unchecked")
+    private final RedisAsyncCommands<byte[], byte[]> async = mock(RedisAsyncCommands.class);
+    private final ScheduledExecutorService flusher = mock(ScheduledExecutorService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    @SuppressWarnings("unchecked")
+    private final ReactiveRedisTemplate<String, byte[]> bytesTemplate = mock(ReactiveRedisTemplate.class);
+
+    // written to the connection, answered on the next flush
+    private final List<Queued<?>> queued = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private boolean connectionLost;
+
+    private RedisBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        property.setEnabled(true);
+        property.setMaxSize(4);
+        property.setWindowMicros(100);
+
+        when(connectionFactory.getRequiredNativeClient()).thenReturn(client);
+        when(connectionFactory.getStandaloneConfiguration()).thenReturn(new RedisStandaloneConfiguration());
+        when(connectionFactory.getTimeout()).thenReturn(150L);
+        when(client.connectAsync(eq(ByteArrayCodec.INSTANCE), any(RedisURI.class)))
+                .thenReturn(ConnectionFuture.completed(null, conn));
+        when(conn.async()).thenReturn(async);
+        when(async.get(any(byte[].class))).thenAnswer(inv -> queue(string(inv.getArgument(0))));
+        doAnswer(inv -> {
+            flushed();
+            return null;
+        }).when(conn).flushCommands();
+        when(flusher.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MICROSECONDS))).thenAnswer(inv -> {
+            scheduled.add(inv.getArgument(0));
+            return null;
+        });
+
+        batcher = new RedisBatcher(property, connectionFactory, mock(ReactiveStringRedisTemplate.class),
+                bytesTemplate, new GatewayMetrics(registry), flusher);
+    }
+
+    @Test
+    void fullBatchIsFlushedRightAway() throws Exception {
+        List<CompletableFuture<byte[]>> replies = get("a", "b", "c");
+        assertThat(replies).noneMatch(CompletableFuture::isDone);
+        verify(conn, never()).flushCommands();
+
+        // the fourth command fills the batch, no need to wait for the flusher
+        replies.addAll(get("d"));
+        verify(conn).flushCommands();
+        assertThat(values(replies)).containsExactly("a", "b", "c", "d");
+
+        // the flush scheduled for the first command finds nothing left to write
+        runScheduled();
+        verify(conn).flushCommands();
+        assertThat(batchSize().count()).isEqualTo(1);
+        assertThat(batchSize().totalAmount()).isEqualTo(4);
+    }
+
+    @Test
+    void partialBatchWaitsForTheFlusher() throws Exception {
+        List<CompletableFuture<byte[]>> replies = get("a", "b", "c");
+        verify(flusher).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MICROSECONDS));
+        assertThat(replies).noneMatch(CompletableFuture::isDone);
+
+        runScheduled();
+        verify(conn).flushCommands();
+        assertThat(values(replies)).containsExactly("a", "b", "c");
+        assertThat(batchSize().totalAmount()).isEqualTo(3);
+
+        // batches are forming now, the next one waits the window for more commands
+        List<CompletableFuture<byte[]>> next = get("e");
+        verify(flusher).schedule(any(Runnable.class), eq(100L), eq(TimeUnit.MICROSECONDS));
+        assertThat(next).noneMatch(CompletableFuture::isDone);
+        runScheduled();
+        assertThat(values(next)).containsExactly("e");
+    }
+
+    @Test
+    void failedCommandDoesNotFailTheRestOfItsBatch() throws Exception {
+        List<CompletableFuture<byte[]>> replies = get("a", "err-wrongtype", "c");
+        runScheduled();
+
+        assertThat(replies.get(0).get()).asString(StandardCharsets.UTF_8).isEqualTo("a");
+        assertThatThrownBy(() -> replies.get(1).get()).hasCauseInstanceOf(RedisCommandExecutionException.class);
+        assertThat(replies.get(2).get()).asString(StandardCharsets.UTF_8).isEqualTo("c");
+    }
+
+    @Test
+    void connectionLostMidBatchFailsEveryQueuedCommand() throws Exception {
+        List<CompletableFuture<byte[]>> replies = get("a", "b", "c");
+        connectionLost = true;
+        runScheduled();
+
+        assertThat(replies).allSatisfy(reply -> assertThatThrownBy(reply::get)
+                .hasCauseInstanceOf(RedisConnectionException.class));
+
+        // Lettuce reconnects on its own, later batches go through the same connection
+        connectionLost = false;
+        List<CompletableFuture<byte[]>> next = get("d");
+        runScheduled();
+        assertThat(values(next)).containsExactly("d");
+        verify(client).connectAsync(eq(ByteArrayCodec.INSTANCE), any(RedisURI.class));
+    }
+
+    @Test
+    void failedConnectIsRetriedByTheNextCommand() throws Exception {
+        when(client.connectAsync(eq(ByteArrayCodec.INSTANCE), any(RedisURI.class)))
+                .thenReturn(ConnectionFuture.from(null,
+                        CompletableFuture.failedFuture(new RedisConnectionException("Connection refused"))))
+                .thenReturn(ConnectionFuture.completed(null, conn));
+
+        assertThatThrownBy(() -> batcher.get("a").block()).isInstanceOf(RedisConnectionException.class);
+
+        List<CompletableFuture<byte[]>> replies = get("a");
+        runScheduled();
+        assertThat(values(replies)).containsExactly("a");
+        verify(client, times(2)).connectAsync(eq(ByteArrayCodec.INSTANCE), any(RedisURI.class));
+        verify(conn).setAutoFlushCommands(false);
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void unknownScriptIsSentByBody() throws Exception {
+        RedisScript<List> script = RedisScript.of("return {1}", List.class);
+        when(async.evalsha(anyString(), eq(ScriptOutputType.MULTI), any(byte[][].class), any(byte[][].class)))
+                .thenAnswer(inv -> queue(new RedisNoScriptException("NOSCRIPT No matching script")));
+        when(async.eval(anyString(), eq(ScriptOutputType.MULTI), any(byte[][].class), any(byte[][].class)))
+                .thenAnswer(inv -> queue(List.of(1L)));
+
+        CompletableFuture<List> reply = batcher.evalList(script, List.of("k"), List.of("1")).toFuture();
+        runScheduled();
+        // the retry by body queues a batch of its own
+        runScheduled();
+
+        assertThat(reply.get(1, TimeUnit.SECONDS)).containsExactly(1L);
+        verify(async).eval(eq("return {1}"), eq(ScriptOutputType.MULTI), any(byte[][].class), any(byte[][].class));
+    }
+
+    private List<CompletableFuture<byte[]>> get(String... keys) {
+        List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+        for (String key : keys) replies.add(batcher.get(key).toFuture());
+        return replies;
+    }
+
+    private void runScheduled() {
+        List<Runnable> due = new ArrayList<>(scheduled);
+        scheduled.clear();
+        due.forEach(Runnable::run);
+    }
+
+    private DistributionSummary batchSize() {
+        return registry.get("gateway.redis.batch.size").summary();
+    }
+
+    private static List<String> values(List<CompletableFuture<byte[]>> replies) throws Exception {
+        List<String> values = new ArrayList<>();
+        for (CompletableFuture<byte[]> reply : replies) values.add(string(reply.get(1, TimeUnit.SECONDS)));
+        return values;
+    }
+
+    /**
+     * A GET answers with its own key, or fails when the key starts with {@code err}.
+     */
+    private Queued<byte[]> queue(String key) {
+        return queue(future -> {
+            if (key.startsWith("err")) {
+                future.completeExceptionally(new RedisCommandExecutionException("WRONGTYPE Operation against a key holding the wrong kind of value"));
+            } else {
+                future.complete(key.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    private Queued<Object> queue(RedisNoScriptException error) {
+        return queue(future -> future.completeExceptionally(error));
+    }
+
+    private Queued<Object> queue(List<Long> reply) {
+        return queue(future -> future.complete(reply));
+    }
+
+    private <T> Queued<T> queue(Consumer<Queued<T>> answer) {
+        Queued<T> future = new Queued<>(answer);
+        queued.add(future);
+        return future;
+    }
+
+    private void flushed() {
+        List<Queued<?>> batch = new ArrayList<>(queued);
+        queued.clear();
+        for (Queued<?> future : batch) {
+            if (connectionLost) future.completeExceptionally(new RedisConnectionException("Connection closed"));
+            else future.answer();
+        }
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Queued<T> extends CompletableFuture<T> implements RedisFuture<T> {
+
+        private final Consumer<Queued<T>> answer;
+
+        private Queued(Consumer<Queued<T>> answer) {
+            this.answer = answer;
+        }
+
+        void answer() {
+            answer.accept(this);
+        }
+
+        @Override
+        public String getError() {
+            return null;
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            return isDone();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+import uz.nodir.ratelimitapigateway.model.dto.RateLimitDecision;
+import uz.nodir.ratelimitapigateway.model.enums.QuotaScope;
+import uz.nodir.ratelimitapigateway.model.enums.RedisFailurePolicy;
+import uz.nodir.ratelimitapigateway.model.property.JsonRateLimitProperty;
+import uz.nodir.ratelimitapigateway.model.property.QuotaProperty;
+import uz.nodir.ratelimitapigateway.model.property.RedisResilienceProperty;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisRateLimiterEngineTests {
+
+    private final RedisBatcher batcher = mock(RedisBatcher.class);
+    private final RedisGuard guard = mock(RedisGuard.class);
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void quotasGoToRedisInOrderAndReportTheTightestOne() {
+        when(guard.limiter(any(), any())).thenAnswer(inv -> inv.getArgument(0));
+        when(batcher.evalList(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Mono.just((List) List.of(1L, 2L, 0L, 3L)));
+
+        RateLimitDecision decision = engine().tryAcquire("int-1", quotas()).block();
+
+        assertThat(decision).isEqualTo(new RateLimitDecision(true, 2, 0, 3));
+        verify(batcher).evalList(any(RedisScript.class),
+                eq(List.of("redisRateLimiter:q:smartBill:int-1:1", "redisRateLimiter:q:*:int-1:3600")),
+                eq(List.of("5", "1000", "3", "3600000")));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void rejectionReportsTheQuotaThatRejected() {
+        when(guard.limiter(any(), any())).thenAnswer(inv -> inv.getArgument(0));
+        when(batcher.evalList(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Mono.just((List) List.of(0L, 0L, 1500L, 5L)));
+
+        assertThat(engine().tryAcquire("int-1", quotas()).block()).isEqualTo(new RateLimitDecision(false, 0, 2, 5));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void degradedQuotasStopAtTheFirstRejectionAndReportItsLimit() {
+        when(guard.limiter(any(), any())).thenAnswer(inv ->
+                ((Function<Throwable, Mono<RateLimitDecision>>) inv.getArgument(1)).apply(new IllegalStateException("down")));
+        RedisRateLimiterEngine engine = engine();
+        QuotaProperty perRoute = quota(QuotaScope.INTEGRATOR_ROUTE, 2, 3600);
+        QuotaProperty overall = quota(QuotaScope.INTEGRATOR, 3, 3600);
+        JsonRateLimitProperty property = property(perRoute, overall);
+
+        assertThat(engine.tryAcquire("int-1", property).block()).isEqualTo(new RateLimitDecision(true, 1, 0, 2));
+        assertThat(engine.tryAcquire("int-1", property).block()).isEqualTo(new RateLimitDecision(true, 0, 0, 2));
+        assertThat(engine.tryAcquire("int-1", property).block())
+                .extracting(RateLimitDecision::allowed, RateLimitDecision::limit).containsExactly(false, 2L);
+
+        // the rejected request was not counted against the overall quota: one permit is left
+        assertThat(engine.tryAcquire("int-1", property(overall)).block()).isEqualTo(new RateLimitDecision(true, 0, 0, 3));
+    }
+
+    private RedisRateLimiterEngine engine() {
+        RedisResilienceProperty resilience = new RedisResilienceProperty();
+        return new RedisRateLimiterEngine(batcher, mock(LeasedRateLimiter.class), new LocalRateLimiter(), guard,
+                resilience, new GatewayMetrics(new SimpleMeterRegistry()));
+    }
+
+    private static JsonRateLimitProperty quotas() {
+        return property(quota(QuotaScope.INTEGRATOR_ROUTE, 5, 1), quota(QuotaScope.INTEGRATOR, 3, 3600));
+    }
+
+    private static JsonRateLimitProperty property(QuotaProperty... quotas) {
+        JsonRateLimitProperty property = new JsonRateLimitProperty();
+        property.setRouteId("smartBill");
+        property.setRedisFailurePolicy(RedisFailurePolicy.LOCAL);
+        property.setQuotas(List.of(quotas));
+        return property;
+    }
+
+    private static QuotaProperty quota(QuotaScope scope, int limit, int windowSeconds) {
+        QuotaProperty quota = new QuotaProperty();
+        quota.setScope(scope);
+        quota.setLimit(limit);
+        quota.setWindowSeconds(windowSeconds);
+        return quota;
+    }
+}
@@ -0,0 +1,219 @@
+package uz.nodir.ratelimitapigateway.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.BODY;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.body;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.cacheHeader;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.exchange;
+import static uz.nodir.ratelimitapigateway.service.CacheFilterFixture.json;
+
+class RequestCoalescerTests {
+
+    private static final int FOLLOWERS = 5;
+
+    @Test
+    void followersGetTheLeadersResponse() throws Exception {
+        CacheFilterFixture fixture = coalescing();
+        Sinks.Empty<Void> gate = Sinks.empty();
+        fixture.upstream = (exchange, call) -> gate.asMono().then(json(exchange, BODY));
+        GatewayFilter filter = fixture.filter();
+
+        MockServerWebExchange leader = exchange();
+        CompletableFuture<Void> led = fixture.run(filter, leader).toFuture();
+        List<MockServerWebExchange> followers = new ArrayList<>();
+        List<CompletableFuture<Void>> followed = new ArrayList<>();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            MockServerWebExchange follower = exchange();
+            followers.add(follower);
+            followed.add(fixture.run(filter, follower).toFuture());
+        }
+        assertThat(followed).noneMatch(CompletableFuture::isDone);
+
+        gate.tryEmitEmpty();
+        led.get(2, TimeUnit.SECONDS);
+        CompletableFuture.allOf(followed.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+
+        assertThat(fixture.upstreamCalls).hasValue(1);
+        assertThat(cacheHeader(leader)).isEqualTo("MISS");
+        assertThat(body(leader)).isEqualTo(BODY);
+        for (MockServerWebExchange follower : followers) {
+            assertThat(cacheHeader(follower)).isEqualTo("HIT");
+            assertThat(body(follower)).isEqualTo(BODY);
+        }
+        // the flight is over, the next miss leads a new one
+        assertThat(fixture.coalescer.join(new CacheKeyBuilder(fixture.cfg).build(exchange())).lead()).isTrue();
+    }
+
+    @Test
+    void followersForwardOnTheirOwnWhenTheLeaderFails() throws Exception {
+        CacheFilterFixture fixture = coalescing();
+        Sinks.Empty<Void> gate = Sinks.empty();
+        fixture.upstream = (exchange, call) -> call == 1
+                ? gate.asMono().then(Mono.error(new IOException("connection reset")))
+                : json(exchange, "{\"call\":" + call + "}");
+        GatewayFilter filter = fixture.filter();
+
+        CompletableFuture<Void> led = fixture.run(filter, exchange()).toFuture();
+        List<MockServerWebExchange> followers = new ArrayList<>();
+        List<CompletableFuture<Void>> followed = new ArrayList<>();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            MockServerWebExchange follower = exchange();
+            followers.add(follower);
+            followed.add(fixture.run(filter, follower).toFuture());
+        }
+
+        gate.tryEmitEmpty();
+        assertThatThrownBy(() -> led.get(2, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+        CompletableFuture.allOf(followed.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+
+        assertThat(fixture.upstreamCalls).hasValue(1 + FOLLOWERS);
+        assertThat(followers).allSatisfy(follower -> {
+            assertThat(follower.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(body(follower)).startsWith("{\"call\":");
+        });
+    }
+
+    @Test
+    void followersForwardRightAwayWhenTheLeaderIsCancelled() throws Exception {
+        CacheFilterFixture fixture = coalescing();
+        fixture.cfg.setCoalesceTimeoutMillis(60_000);
+        fixture.upstream = (exchange, call) -> call == 1 ? Mono.never() : json(exchange, BODY);
+        GatewayFilter filter = fixture.filter();
+
+        Disposable leader = fixture.run(filter, exchange()).subscribe();
+        MockServerWebExchange follower = exchange();
+        CompletableFuture<Void> followed = fixture.run(filter, follower).toFuture();
+        assertThat(followed).isNotDone();
+
+        // the client of the leader went away
+        leader.dispose();
+        followed.get(2, TimeUnit.SECONDS);
+
+        assertThat(fixture.upstreamCalls).hasValue(2);
+        assertThat(body(follower)).isEqualTo(BODY);
+    }
+
+    @Test
+    void followersStopWaitingAfterTheCoalesceTimeout() throws Exception {
+        CacheFilterFixture fixture = coalescing();
+        fixture.cfg.setCoalesceTimeoutMillis(100);
+        fixture.upstream = (exchange, call) -> call == 1 ? Mono.never() : json(exchange, BODY);
+        GatewayFilter filter = fixture.filter();
+
+        Disposable leader = fixture.run(filter, exchange()).subscribe();
+        MockServerWebExchange follower = exchange();
+        long start = System.nanoTime();
+        fixture.run(filter, follower).block(Duration.ofSeconds(2));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(waitedMillis).isGreaterThanOrEqualTo(100);
+        assertThat(fixture.upstreamCalls).hasValue(2);
+        assertThat(body(follower)).isEqualTo(BODY);
+        leader.dispose();
+    }
+
+    @Test
+    void leaderTakesTheLockWithItsTtlAndReleasesItWhenUpstreamFails() {
+        CacheFilterFixture fixture = locking(true);
+        fixture.upstream = (exchange, call) -> Mono.error(new IOException("connection refused"));
+
+        assertThatThrownBy(() -> fixture.run(fixture.filter(), exchange()).block(Duration.ofSeconds(2)))
+                .hasCauseInstanceOf(IOException.class);
+
+        verify(fixture.values).setIfAbsent(startsWith("cache-lock:cache:smartBill:"), any(), eq(Duration.ofMillis(3000)));
+        verify(fixture.redis).execute(anyScript(),
+                argThat((List<String> keys) -> keys.get(0).startsWith("cache-lock:cache:smartBill:")), anyList());
+    }
+
+    @Test
+    void leaderReleasesTheLockWhenCancelled() {
+        CacheFilterFixture fixture = locking(true);
+        fixture.upstream = (exchange, call) -> Mono.never();
+
+        Disposable leader = fixture.run(fixture.filter(), exchange()).subscribe();
+        verify(fixture.redis, never()).execute(anyScript(), anyList(), anyList());
+        leader.dispose();
+
+        verify(fixture.redis).execute(anyScript(), anyList(), anyList());
+    }
+
+    @Test
+    void nodeWithoutTheLockServesTheRecordAnotherNodeStores() throws IOException {
+        CacheFilterFixture fixture = locking(false);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        long now = System.currentTimeMillis();
+        byte[] record = CacheEntryCodec.encode(200, headers, BODY.getBytes(StandardCharsets.UTF_8), now, now + 60_000);
+        when(fixture.values.get(anyString())).thenReturn(Mono.empty()).thenReturn(Mono.empty()).thenReturn(Mono.just(record));
+
+        MockServerWebExchange exchange = exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(fixture.upstreamCalls).hasValue(0);
+        assertThat(cacheHeader(exchange)).isEqualTo("HIT");
+        assertThat(body(exchange)).isEqualTo(BODY);
+    }
+
+    @Test
+    void nodeWithoutTheLockForwardsWhenNoRecordShowsUpInTime() {
+        CacheFilterFixture fixture = locking(false);
+        fixture.cfg.setCoalesceTimeoutMillis(100);
+        when(fixture.values.get(anyString())).thenReturn(Mono.empty());
+
+        MockServerWebExchange exchange = exchange();
+        fixture.run(fixture.filter(), exchange).block(Duration.ofSeconds(2));
+
+        assertThat(fixture.upstreamCalls).hasValue(1);
+        assertThat(body(exchange)).isEqualTo(BODY);
+    }
+
+    private static CacheFilterFixture coalescing() {
+        CacheFilterFixture fixture = new CacheFilterFixture();
+        fixture.cfg.setCoalesceEnabled(true);
+        return fixture;
+    }
+
+    private static CacheFilterFixture locking(boolean acquired) {
+        CacheFilterFixture fixture = coalescing();
+        fixture.cfg.setCoalesceLockEnabled(true);
+        fixture.cfg.setCoalesceLockTtlMillis(3000);
+        fixture.cfg.setCoalescePollMillis(10);
+        when(fixture.values.setIfAbsent(anyString(), any(), any(Duration.class))).thenReturn(Mono.just(acquired));
+        when(fixture.redis.execute(anyScript(), anyList(), anyList())).thenReturn(Flux.just(1L));
+        return fixture;
+    }
+
+    private static RedisScript<Long> anyScript() {
+        return any();
+    }
+}